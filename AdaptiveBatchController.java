@@ -0,0 +1,189 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.logging.Logger;
+
+// Feedback controller for the WK_TSMAESTRO writers. Every few batches it compares the
+// achieved rows/second with the previous window and keeps moving the row batch size in
+// the direction that helped; a batch slower than the latency bound halves the size and
+// sheds a writer. batchRows * concurrency never exceeds the in-flight row budget.
+@Component
+@ManagedResource(objectName = "com.socgen.riskweb:type=Loader,name=AdaptiveBatchController")
+public class AdaptiveBatchController {
+
+    private static final Logger log = Logger.getLogger(AdaptiveBatchController.class.getName());
+
+    @Value("${maestro.loader.batch.initialRows:5000}")
+    private int initialRows;
+
+    @Value("${maestro.loader.batch.minRows:500}")
+    private int minRows;
+
+    @Value("${maestro.loader.batch.maxRows:50000}")
+    private int maxRows;
+
+    @Value("${maestro.loader.batch.maxLatencyMs:2000}")
+    private long maxLatencyMs;
+
+    @Value("${maestro.loader.batch.maxInFlightRows:400000}")
+    private long maxInFlightRows;
+
+    @Value("${maestro.loader.batch.windowBatches:4}")
+    private int windowBatches;
+
+    @Value("${maestro.loader.concurrency.initial:4}")
+    private int initialConcurrency;
+
+    @Value("${maestro.loader.concurrency.min:1}")
+    private int minConcurrency;
+
+    @Value("${maestro.loader.concurrency.max:#{T(java.lang.Runtime).getRuntime().availableProcessors() * 2}}")
+    private int maxConcurrency;
+
+    private int batchRows;
+    private int concurrency;
+    private int direction = 1;
+
+    private long windowStartNanos;
+    private long windowRows;
+    private int windowCount;
+    private long windowMaxLatencyMs;
+
+    private double lastThroughput;
+    private long lastLatencyMs;
+    private long increases;
+    private long decreases;
+    private String lastDecision = "none";
+
+    // Starts a load from the configured initial point
+    public synchronized void reset() {
+        batchRows = clamp(initialRows, minRows, maxRows);
+        concurrency = clamp(initialConcurrency, minConcurrency, maxConcurrency);
+        direction = 1;
+        lastThroughput = 0;
+        enforceInFlightBudget();
+        startWindow();
+    }
+
+    public synchronized int getTargetBatchRows() {
+        return batchRows;
+    }
+
+    public synchronized int getTargetConcurrency() {
+        return concurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public synchronized void record(int rows, long elapsedNanos) {
+        long latencyMs = elapsedNanos / 1_000_000;
+        lastLatencyMs = latencyMs;
+        windowRows += rows;
+        windowCount++;
+        windowMaxLatencyMs = Math.max(windowMaxLatencyMs, latencyMs);
+
+        if (windowCount < windowBatches && latencyMs <= maxLatencyMs) {
+            return;
+        }
+
+        double seconds = Math.max(1, System.nanoTime() - windowStartNanos) / 1_000_000_000.0;
+        double throughput = windowRows / seconds;
+
+        if (windowMaxLatencyMs > maxLatencyMs) {
+            batchRows = clamp(batchRows / 2, minRows, maxRows);
+            concurrency = clamp(concurrency - 1, minConcurrency, maxConcurrency);
+            direction = -1;
+            decreases++;
+            lastDecision = "latency " + windowMaxLatencyMs + "ms over bound, shrink";
+        } else {
+            boolean improved = lastThroughput == 0 || throughput >= lastThroughput * 1.05;
+            boolean worse = lastThroughput > 0 && throughput < lastThroughput * 0.95;
+            if (worse) {
+                direction = -direction;
+            }
+            int step = Math.max(1, batchRows / 4);
+            batchRows = clamp(batchRows + direction * step, minRows, maxRows);
+            // Spare latency headroom and a gain: try one more writer
+            if (improved && windowMaxLatencyMs < maxLatencyMs / 2) {
+                concurrency = clamp(concurrency + 1, minConcurrency, maxConcurrency);
+            }
+            if (direction > 0) {
+                increases++;
+            } else {
+                decreases++;
+            }
+            lastDecision = (direction > 0 ? "grow" : "shrink") + " at " + String.format("%.0f", throughput) + " rows/s";
+        }
+
+        enforceInFlightBudget();
+        lastThroughput = throughput;
+        log.info("Batch controller: " + lastDecision + " -> batchRows=" + batchRows + ", concurrency=" + concurrency
+                + ", windowMaxLatency=" + windowMaxLatencyMs + "ms");
+        startWindow();
+    }
+
+    @ManagedAttribute
+    public synchronized int getBatchRows() {
+        return batchRows;
+    }
+
+    @ManagedAttribute
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    @ManagedAttribute
+    public synchronized double getLastThroughput() {
+        return lastThroughput;
+    }
+
+    @ManagedAttribute
+    public synchronized long getLastLatencyMs() {
+        return lastLatencyMs;
+    }
+
+    @ManagedAttribute
+    public synchronized long getIncreases() {
+        return increases;
+    }
+
+    @ManagedAttribute
+    public synchronized long getDecreases() {
+        return decreases;
+    }
+
+    @ManagedAttribute
+    public synchronized String getLastDecision() {
+        return lastDecision;
+    }
+
+    private void enforceInFlightBudget() {
+        while ((long) batchRows * concurrency > maxInFlightRows) {
+            if (concurrency > minConcurrency) {
+                concurrency--;
+            } else if (batchRows > minRows) {
+                batchRows = clamp((int) (maxInFlightRows / concurrency), minRows, maxRows);
+                break;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void startWindow() {
+        windowStartNanos = System.nanoTime();
+        windowRows = 0;
+        windowCount = 0;
+        windowMaxLatencyMs = 0;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
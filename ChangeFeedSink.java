@@ -0,0 +1,18 @@
+package com.socgen.riskweb.dao;
+
+// Receives the change feed RegistrationChangeFeed computes on every publish. All calls come
+// from the feed's own thread, one generation at a time: generationStarted, the generation's
+// events, then generationComplete once they are all out. A sink that throws from
+// generationStarted or onChange gets generationAborted and sits out the rest of the generation.
+public interface ChangeFeedSink {
+
+    default void generationStarted(long generation) {
+    }
+
+    void onChange(RegistrationChangeEvent event);
+
+    void generationComplete(long generation, long events);
+
+    default void generationAborted(long generation) {
+    }
+}
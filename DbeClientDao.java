@@ -0,0 +1,13 @@
+package com.socgen.riskweb.dao;
+
+import com.socgen.riskweb.Model.ResponseInternal;
+
+public interface DbeClientDao {
+
+    // Reloads WK_TSMAESTRO from the snapshot
+    void savePrimaryroleApi(ResponseInternal internalRatingsEventResponse);
+
+    // Loads the snapshot of snapshotDate. Implementations that journal their batches resume a
+    // failed load of the same date; a date that already completed is loaded again from scratch.
+    void savePrimaryroleApi(ResponseInternal internalRatingsEventResponse, String snapshotDate);
+}
@@ -0,0 +1,217 @@
+package com.socgen.riskweb.dao;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.Model.ResponseInternal;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// R2DBC alternative to DbeClientDaoImpl. Rows are written as multi-binding statements
+// over at most WRITE_CONNECTIONS connections; new batches are only requested from the
+// source once a previous one has been acknowledged by the database. Every batch takes a
+// connection from a pool: Boot's ConnectionPool when r2dbc-pool configured one, otherwise
+// the plain ConnectionFactory is wrapped in a pool of writeConnections + 1 here.
+@Component
+@Primary
+@ConditionalOnProperty(name = "maestro.loader.r2dbc.enabled", havingValue = "true")
+public class DbeClientDaoR2dbcImpl implements DbeClientDao, InitializingBean, DisposableBean {
+
+    private static final Logger log = Logger.getLogger(DbeClientDaoR2dbcImpl.class.getName());
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @Autowired
+    private RegistrationLookupService registrationLookupService;
+
+    @Autowired
+    private SnapshotGeneration snapshotGeneration;
+
+    @Autowired
+    private Tracer tracer;
+
+    @Autowired
+    private LoadGate loadGate;
+
+    @Value("${maestro.loader.r2dbc.batchSize:1000}")
+    private int batchSize;
+
+    @Value("${maestro.loader.r2dbc.connections:4}")
+    private int writeConnections;
+
+    // Bind markers are driver specific; $n works for H2 and PostgreSQL
+    @Value("${maestro.loader.r2dbc.insertSql:INSERT INTO WK_TSMAESTRO (entityId, code, subbookingId) VALUES ($1, $2, $3)}")
+    private String insertSql;
+
+    // Set when the injected factory was not pooled and this class owns the pool
+    private ConnectionPool ownPool;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (connectionFactory instanceof ConnectionPool) {
+            return;
+        }
+        ownPool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .name("maestro-r2dbc-loader")
+                .initialSize(0)
+                .maxSize(writeConnections + 1)
+                .maxIdleTime(Duration.ofMinutes(1))
+                .build());
+        connectionFactory = ownPool;
+        log.info("ConnectionFactory is not pooled, writing through a pool of " + (writeConnections + 1) + " connections");
+    }
+
+    @Override
+    public void destroy() {
+        if (ownPool != null) {
+            ownPool.dispose();
+        }
+    }
+
+    @Override
+    public void savePrimaryroleApi(ResponseInternal internalRatingsEventResponse) {
+        savePrimaryroleApi(internalRatingsEventResponse, null);
+    }
+
+    // R2DBC loads keep no checkpoint journal: every date is loaded from scratch. Admission
+    // goes through LoadGate as for DbeClientDaoImpl
+    @Override
+    public void savePrimaryroleApi(ResponseInternal internalRatingsEventResponse, String snapshotDate) {
+        List<InternalRegistrations> internalRegistrationsList = internalRatingsEventResponse.getInternalRegistrations();
+        loadGate.load(snapshotDate, () -> loadGate.write(snapshotDate, () -> {
+            log.info("Total records to process: " + internalRegistrationsList.size());
+            Long inserted = insertAll(Flux.fromIterable(internalRegistrationsList)).block();
+            log.info("Completed processing. Total inserted: " + inserted);
+            return "loaded";
+        }));
+    }
+
+    // Consumes the stream from ReactiveMaestroClient without materialising the snapshot. The
+    // undated load's claim and the table are taken on a worker thread before the stream is
+    // subscribed, and released once it terminates; it fails if an undated load is already running.
+    public Mono<Long> savePrimaryroleApi(Flux<InternalRegistrations> internalRegistrations) {
+        Mono<LoadGate.Claim> admission = Mono.fromCallable(() -> loadGate.claimTable(null))
+                .subscribeOn(Schedulers.boundedElastic());
+        return Mono.usingWhen(admission,
+                claim -> insertAll(internalRegistrations),
+                claim -> Mono.fromRunnable(() -> claim.release("loaded")),
+                (claim, e) -> Mono.fromRunnable(() -> claim.fail(e)),
+                claim -> Mono.fromRunnable(() -> claim.release("cancelled")));
+    }
+
+    private Mono<Long> insertAll(Flux<InternalRegistrations> internalRegistrations) {
+        long startTime = System.currentTimeMillis();
+        RegistrationLookupIndex.Builder lookupBuilder = new RegistrationLookupIndex.Builder();
+        PrimaryRoleReverseIndex.Builder reverseIndex = new PrimaryRoleReverseIndex.Builder();
+        AtomicInteger ordinals = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
+        // Batches run on driver threads; their spans hang off the caller's span
+        Context parent = Context.current();
+
+        return truncate()
+                .thenMany(internalRegistrations
+                        .doOnNext(lookupBuilder::add)
+                        .concatMapIterable(internalReg -> flatten(ordinals.getAndIncrement(), internalReg, reverseIndex))
+                        .buffer(batchSize)
+                        .flatMap(batch -> executeBatch(batch, batches.getAndIncrement(), parent), writeConnections))
+                .reduce(0L, Long::sum)
+                .doOnNext(total -> logProgress(total, startTime))
+                .doOnSuccess(total -> {
+                    registrationLookupService.publish(lookupBuilder.build(), reverseIndex.build());
+                    snapshotGeneration.bumpAfterCommit();
+                });
+    }
+
+    private Mono<Void> truncate() {
+        return Mono.usingWhen(connectionFactory.create(),
+                        connection -> Flux.from(connection
+                                        .createStatement(DbeClientDaoImpl.AppQueries.QRY_PRIMARYROLE_TRUNCATE.value())
+                                        .execute())
+                                .flatMap(Result::getRowsUpdated)
+                                .then(),
+                        Connection::close)
+                .doOnSuccess(ignored -> log.info("Truncated table WK_TSMAESTRO"))
+                .doOnError(e -> log.severe("Failed to truncate table WK_TSMAESTRO: " + e.getMessage()));
+    }
+
+    // Runs sequentially on the source stream, so the builder needs no per-batch merge here
+    private List<Object[]> flatten(int ordinal, InternalRegistrations internalReg,
+                                   PrimaryRoleReverseIndex.Builder reverseIndex) {
+        List<Object[]> rows = new ArrayList<>();
+        PrimaryRoleFlattener.flatten(internalReg, rows);
+        reverseIndex.recordEntity(ordinal, internalReg.getEntityId());
+        for (Object[] row : rows) {
+            reverseIndex.add(ordinal, row);
+        }
+        return rows;
+    }
+
+    private Mono<Long> executeBatch(List<Object[]> batchParams, int batchIndex, Context parent) {
+        return Mono.defer(() -> {
+            Span span = tracer.spanBuilder("maestro.executeBatch")
+                    .setParent(parent)
+                    .setAttribute("maestro.batch.index", batchIndex)
+                    .setAttribute("maestro.rows", batchParams.size())
+                    .startSpan();
+            return insertBatch(batchParams)
+                    .doOnError(e -> {
+                        span.recordException(e);
+                        span.setStatus(StatusCode.ERROR, String.valueOf(e.getMessage()));
+                    })
+                    .doFinally(signal -> span.end());
+        });
+    }
+
+    private Mono<Long> insertBatch(List<Object[]> batchParams) {
+        return Mono.usingWhen(connectionFactory.create(),
+                connection -> {
+                    Statement statement = connection.createStatement(insertSql);
+                    for (int i = 0; i < batchParams.size(); i++) {
+                        Object[] params = batchParams.get(i);
+                        statement.bind(0, params[0]); // entityId
+                        statement.bind(1, params[1]); // code
+                        if (params[2] == null) {
+                            statement.bindNull(2, String.class); // subbookingId
+                        } else {
+                            statement.bind(2, params[2]); // subbookingId
+                        }
+                        if (i < batchParams.size() - 1) {
+                            statement.add();
+                        }
+                    }
+                    return Flux.from(statement.execute())
+                            .flatMap(Result::getRowsUpdated)
+                            .reduce(0L, Long::sum);
+                },
+                Connection::close);
+    }
+
+    private void logProgress(long totalInserted, long startTime) {
+        long elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000;
+        double recordsPerSecond = totalInserted / (double) Math.max(1, elapsedSeconds);
+        log.info("Inserted " + totalInserted + " records. Rate: " + String.format("%.2f", recordsPerSecond) + " records/second");
+    }
+}
@@ -0,0 +1,129 @@
+package com.socgen.riskweb.dao;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.Model.ResponseInternal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+// Distributed mode of the primary role load. Every participating instance calls run() with
+// the same snapshot; shards of the sorted entity list are claimed through ShardLeaseCoordinator
+// and written with DbeClientDaoImpl.saveShard until none are left. A run is this JVM's load of
+// the date (LoadGate): it holds WK_TSMAESTRO locally from creating the shards until it publishes.
+@Component
+public class DistributedLoadWorker {
+
+    private static final Logger log = Logger.getLogger(DistributedLoadWorker.class.getName());
+
+    @Autowired
+    private ShardLeaseCoordinator shardLeaseCoordinator;
+
+    @Autowired
+    private DbeClientDaoImpl dbeClientDao;
+
+    @Autowired
+    private LoadGate loadGate;
+
+    @Value("${maestro.distributed.shards:32}")
+    private int shardCount;
+
+    @Value("${maestro.distributed.leaseMs:60000}")
+    private long leaseMillis;
+
+    @Value("${maestro.distributed.pollMs:2000}")
+    private long pollMillis;
+
+    @Value("${maestro.distributed.timeoutMs:7200000}")
+    private long timeoutMillis;
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID();
+
+    public String getOwner() {
+        return owner;
+    }
+
+    // Returns true once every shard of the snapshot is done, on whichever instance wrote it
+    public boolean run(String snapshotDate, ResponseInternal internalRatingsEventResponse) throws InterruptedException {
+        return "loaded".equals(loadGate.load(snapshotDate, () -> loadGate.write(snapshotDate,
+                () -> runShards(snapshotDate, internalRatingsEventResponse))));
+    }
+
+    private String runShards(String snapshotDate, ResponseInternal internalRatingsEventResponse)
+            throws InterruptedException {
+        List<InternalRegistrations> entities = DbeClientDaoImpl.sortedEntities(internalRatingsEventResponse);
+        Runnable prepare = () -> dbeClientDao.resetForLoad(snapshotDate);
+        shardLeaseCoordinator.initShards(snapshotDate, entities.size(), shardCount, owner, leaseMillis, prepare);
+
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int written = 0;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                ShardLeaseCoordinator.Shard shard = shardLeaseCoordinator.claim(snapshotDate, owner, leaseMillis);
+                if (shard == null) {
+                    int remaining = shardLeaseCoordinator.remaining(snapshotDate);
+                    if (remaining == 0) {
+                        log.info(owner + " wrote " + written + " shards; all shards of " + snapshotDate + " are done");
+                        dbeClientDao.publishLoaded(snapshotDate, entities);
+                        return "loaded";
+                    }
+                    // Others still hold leases, or the creator of the shards died before opening
+                    // them; wait in case one of the leases expires
+                    shardLeaseCoordinator.takeOverStaleInit(snapshotDate, owner, leaseMillis, prepare);
+                    Thread.sleep(pollMillis);
+                    continue;
+                }
+
+                if (writeShard(snapshotDate, entities, shard, heartbeats)) {
+                    written++;
+                }
+            }
+        } finally {
+            heartbeats.shutdownNow();
+        }
+
+        log.severe("Distributed load of " + snapshotDate + " did not finish within " + timeoutMillis + " ms");
+        return "timed out";
+    }
+
+    private boolean writeShard(String snapshotDate, List<InternalRegistrations> entities,
+                               ShardLeaseCoordinator.Shard shard, ScheduledExecutorService heartbeats) {
+        int shardId = shard.getShardId();
+        AtomicBoolean leaseHeld = new AtomicBoolean(true);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> {
+            // An exception escaping here would cancel every later heartbeat without a word
+            try {
+                if (!shardLeaseCoordinator.heartbeat(shard, leaseMillis)) {
+                    log.warning("Lost lease on shard " + shardId + " of " + snapshotDate);
+                    leaseHeld.set(false);
+                }
+            } catch (RuntimeException e) {
+                log.warning("Heartbeat on shard " + shardId + " of " + snapshotDate + " failed, giving the lease up: "
+                        + e.getMessage());
+                leaseHeld.set(false);
+            }
+        }, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+
+        log.info(owner + " claimed shard " + shardId + " [" + shard.getFirstOrdinal() + ", " + shard.getEndOrdinal() + ")");
+        try {
+            dbeClientDao.saveShard(entities, shard, leaseHeld::get);
+            return shardLeaseCoordinator.complete(shard);
+        } catch (RuntimeException e) {
+            log.severe("Shard " + shardId + " failed, releasing it: " + e.getMessage());
+            shardLeaseCoordinator.release(shard);
+            throw e;
+        } finally {
+            heartbeat.cancel(false);
+        }
+    }
+}
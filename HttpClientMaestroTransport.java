@@ -0,0 +1,138 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// java.net.http engine. One client per application, so concurrent Maestro calls (partitions,
+// hedged requests) are multiplexed over a shared HTTP/2 connection, falling back to HTTP/1.1
+// when the server does not negotiate h2. Bodies are handed over as they arrive: send returns
+// once the headers are in, so a caller that wants mid-body failures retried has to read the
+// body inside its MaestroResilience call. The JDK client sends the URL's host itself: a Host
+// header naming that host is dropped, one naming another host (maestro.api.hostHeader) is
+// rejected, since silently routing elsewhere is worse.
+@Component("maestroTransport")
+@ConditionalOnProperty(name = "maestro.transport", havingValue = "http2")
+public class HttpClientMaestroTransport implements MaestroTransport {
+
+    // Headers the JDK client sets itself and rejects from callers; Host comes from the URI
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("host", "connection", "content-length", "expect", "upgrade");
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    public HttpClientMaestroTransport(@Value("${maestro.transport.connectTimeoutMs:10000}") long connectTimeoutMs,
+                                      @Value("${maestro.transport.requestTimeoutMs:300000}") long requestTimeoutMs) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+    }
+
+    @Override
+    public Response send(String url, HttpHeaders headers) throws IOException {
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(buildRequest(url, headers), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling " + url);
+        }
+        return toResponse(response);
+    }
+
+    @Override
+    public CompletableFuture<Response> sendAsync(String url, HttpHeaders headers) {
+        return client.sendAsync(buildRequest(url, headers), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    try {
+                        return toResponse(response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private HttpRequest buildRequest(String url, HttpHeaders headers) {
+        URI uri = URI.create(url);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(requestTimeout).GET();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            String name = header.getKey();
+            if (RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                if ("host".equalsIgnoreCase(name)) {
+                    for (String value : header.getValue()) {
+                        if (!namesHost(value, uri)) {
+                            throw new IllegalArgumentException("Host header " + value + " cannot be sent by the http2 "
+                                    + "transport, the request would go to " + uri.getHost()
+                                    + "; put that host in the URL instead");
+                        }
+                    }
+                }
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(name, value);
+            }
+        }
+        return builder.build();
+    }
+
+    // host or host:port of the URL
+    private static boolean namesHost(String value, URI uri) {
+        String host = value.trim();
+        int port = host.lastIndexOf(':');
+        if (port > host.lastIndexOf(']')) {
+            if (uri.getPort() != -1 && !host.substring(port + 1).equals(String.valueOf(uri.getPort()))) {
+                return false;
+            }
+            host = host.substring(0, port);
+        }
+        return host.equalsIgnoreCase(uri.getHost());
+    }
+
+    private static Response toResponse(HttpResponse<InputStream> response) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+
+        int status = response.statusCode();
+        if (status >= 400) {
+            byte[] body;
+            try (InputStream in = response.body()) {
+                body = in.readAllBytes();
+            }
+            throw statusException(status, headers, body);
+        }
+        return new Response(status, headers, response.body());
+    }
+
+    private static RuntimeException statusException(int status, HttpHeaders headers, byte[] body) {
+        HttpStatus httpStatus = HttpStatus.resolve(status);
+        if (httpStatus == null) {
+            return new UnknownHttpStatusCodeException(status, "", headers, body, StandardCharsets.UTF_8);
+        }
+        if (httpStatus.is4xxClientError()) {
+            return HttpClientErrorException.create(httpStatus, httpStatus.getReasonPhrase(), headers, body, StandardCharsets.UTF_8);
+        }
+        return HttpServerErrorException.create(httpStatus, httpStatus.getReasonPhrase(), headers, body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.socgen.riskweb.dao.ChangeFeedSink;
+import com.socgen.riskweb.dao.RegistrationChangeEvent;
+
+// Publishes the change feed as application events: consumers in the same context declare
+// @EventListener methods taking RegistrationChangeEvent and GenerationCompleted. Listeners
+// run on the change feed thread, not the load's
+@Component
+@ConditionalOnProperty(name = "maestro.changefeed.sink", havingValue = "inprocess")
+public class InProcessChangeFeedSink implements ChangeFeedSink {
+
+    public static final class GenerationCompleted {
+        private final long generation;
+        private final long events;
+
+        GenerationCompleted(long generation, long events) {
+            this.generation = generation;
+            this.events = events;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+    }
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public InProcessChangeFeedSink(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void onChange(RegistrationChangeEvent event) {
+        eventPublisher.publishEvent(event);
+    }
+
+    @Override
+    public void generationComplete(long generation, long events) {
+        eventPublisher.publishEvent(new GenerationCompleted(generation, events));
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.socgen.riskweb.Model.InternalRegistrations;
+
+// Incrementally splits a Maestro response into InternalRegistrations as bytes arrive.
+// Every element of an "internalRegistrations" array is emitted as soon as its closing
+// brace has been fed, so only the entity being parsed is ever buffered.
+// Not thread-safe: one splitter per response.
+public class InternalRegistrationsSplitter {
+
+    private static final String ARRAY_FIELD = "internalRegistrations";
+
+    private final ObjectMapper mapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private int depth;
+    private int arrayDepth = -1;
+    private String lastFieldName;
+
+    private TokenBuffer element;
+    private int elementDepth;
+
+    public InternalRegistrationsSplitter(ObjectMapper mapper) throws IOException {
+        this.mapper = mapper;
+        this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    public List<InternalRegistrations> feed(byte[] bytes, int offset, int length) throws IOException {
+        feeder.feedInput(bytes, offset, offset + length);
+        return drain();
+    }
+
+    public List<InternalRegistrations> endOfInput() throws IOException {
+        feeder.endOfInput();
+        List<InternalRegistrations> remaining = drain();
+        if (element != null || depth != 0) {
+            throw new IOException("Truncated Maestro response: document ended inside the registrations array");
+        }
+        parser.close();
+        return remaining;
+    }
+
+    private List<InternalRegistrations> drain() throws IOException {
+        List<InternalRegistrations> completed = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token, completed);
+        }
+        return completed;
+    }
+
+    private void handle(JsonToken token, List<InternalRegistrations> completed) throws IOException {
+        if (element != null) {
+            element.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                elementDepth++;
+            } else if (token.isStructEnd() && --elementDepth == 0) {
+                try (JsonParser elementParser = element.asParser(mapper)) {
+                    completed.add(mapper.readValue(elementParser, InternalRegistrations.class));
+                }
+                element = null;
+            }
+            return;
+        }
+
+        if (token == JsonToken.START_OBJECT && arrayDepth >= 0 && depth == arrayDepth) {
+            // Direct child of the registrations array: buffer it until it closes
+            element = new TokenBuffer(parser);
+            element.copyCurrentEvent(parser);
+            elementDepth = 1;
+        } else if (token.isStructStart()) {
+            depth++;
+            if (token == JsonToken.START_ARRAY && arrayDepth < 0 && ARRAY_FIELD.equals(lastFieldName)) {
+                arrayDepth = depth;
+            }
+        } else if (token.isStructEnd()) {
+            if (token == JsonToken.END_ARRAY && depth == arrayDepth) {
+                arrayDepth = -1;
+            }
+            depth--;
+        }
+
+        lastFieldName = token == JsonToken.FIELD_NAME ? parser.getCurrentName() : null;
+    }
+}
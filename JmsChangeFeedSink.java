@@ -0,0 +1,117 @@
+import jakarta.jms.Connection;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.socgen.riskweb.dao.ChangeFeedSink;
+import com.socgen.riskweb.dao.RegistrationChangeEvent;
+
+// Sends the change feed to maestro.changefeed.destination as MapMessages, one per event and a
+// GENERATION_COMPLETE marker carrying the event count once a generation is out. Works with
+// any broker Boot configures; spring.artemis.mode=embedded gives an in-JVM broker for tests.
+// Each generation goes out in one transacted session, committed with its marker: consumers
+// see all of a generation or none of it, and the broker gets one commit instead of one per event.
+@Component
+@ConditionalOnProperty(name = "maestro.changefeed.sink", havingValue = "jms")
+public class JmsChangeFeedSink implements ChangeFeedSink {
+
+    private final JmsTemplate jmsTemplate;
+    private final String destination;
+
+    // The open generation's session; only the change feed thread touches these
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+
+    public JmsChangeFeedSink(JmsTemplate jmsTemplate,
+                             @Value("${maestro.changefeed.destination:maestro.primaryrole.changes}") String destination) {
+        this.jmsTemplate = jmsTemplate;
+        this.destination = destination;
+    }
+
+    @Override
+    public void generationStarted(long generation) {
+        try {
+            connection = jmsTemplate.getConnectionFactory().createConnection();
+            session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            Destination target = jmsTemplate.getDestinationResolver()
+                    .resolveDestinationName(session, destination, jmsTemplate.isPubSubDomain());
+            producer = session.createProducer(target);
+        } catch (JMSException e) {
+            close();
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    @Override
+    public void onChange(RegistrationChangeEvent event) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("generation", event.getGeneration());
+        message.put("type", event.getType().name());
+        message.put("level", event.getLevel().name());
+        message.put("entityId", event.getEntityId());
+        // Absent rather than null, not every provider accepts null map values
+        if (event.getCode() != null) {
+            message.put("code", event.getCode());
+        }
+        if (event.getSubbookingId() != null) {
+            message.put("subbookingId", event.getSubbookingId());
+        }
+        send(message);
+    }
+
+    @Override
+    public void generationComplete(long generation, long events) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("generation", generation);
+        message.put("type", "GENERATION_COMPLETE");
+        message.put("events", events);
+        try {
+            send(message);
+            session.commit();
+        } catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void generationAborted(long generation) {
+        try {
+            if (session != null) {
+                JmsUtils.rollbackIfNecessary(session);
+            }
+        } catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        } finally {
+            close();
+        }
+    }
+
+    private void send(Map<String, Object> message) {
+        try {
+            producer.send(jmsTemplate.getMessageConverter().toMessage(message, session));
+        } catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    private void close() {
+        JmsUtils.closeMessageProducer(producer);
+        JmsUtils.closeSession(session);
+        JmsUtils.closeConnection(connection);
+        producer = null;
+        session = null;
+        connection = null;
+    }
+}
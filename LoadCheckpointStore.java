@@ -0,0 +1,127 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+// Journal of committed WK_TSMAESTRO batches. Each row records the entity ordinal range
+// [firstOrdinal, endOrdinal) of one snapshot that is already in the table; it is written
+// in the same transaction as the batch itself. Once every batch is in, a marker row with
+// firstOrdinal = endOrdinal = -1 records that the load of that date completed. Emptying the
+// table for a load replaces that date's rows with a reset marker (-2); only the date of the
+// latest reset can resume, every other date's ranges describe rows that are gone.
+//
+// CREATE TABLE WK_TSMAESTRO_LOAD_CKPT (snapshotDate VARCHAR(10), firstOrdinal INT, endOrdinal INT,
+//                                      totalEntities INT, rowCount INT, committedAt TIMESTAMP)
+@Component
+public class LoadCheckpointStore {
+
+    private static final Logger log = Logger.getLogger(LoadCheckpointStore.class.getName());
+
+    private static final int COMPLETE_MARKER = -1;
+    private static final int RESET_MARKER = -2;
+    // Journal key of loads without a snapshotDate
+    private static final String UNDATED = "undated";
+
+    // Checkpoints commit with the batches, so they use the loader's connections
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public void setLoaderDatabase(LoaderDatabase loaderDatabase) {
+        this.jdbcTemplate = loaderDatabase.getJdbcTemplate();
+    }
+
+    public enum CheckpointQueries {
+        QRY_CKPT_SELECT("SELECT firstOrdinal, endOrdinal, totalEntities FROM WK_TSMAESTRO_LOAD_CKPT WHERE snapshotDate = ?"),
+        QRY_CKPT_INSERT("INSERT INTO WK_TSMAESTRO_LOAD_CKPT (snapshotDate, firstOrdinal, endOrdinal, totalEntities, rowCount, committedAt) VALUES (?, ?, ?, ?, ?, ?)"),
+        QRY_CKPT_CLEAR("DELETE FROM WK_TSMAESTRO_LOAD_CKPT WHERE snapshotDate = ?"),
+        QRY_CKPT_LAST_RESET("SELECT snapshotDate FROM WK_TSMAESTRO_LOAD_CKPT WHERE firstOrdinal = " + RESET_MARKER
+                + " ORDER BY committedAt DESC"),
+        // Matches, and locks until commit, the lease row only while the writer still holds the claim
+        QRY_CKPT_FENCE("UPDATE WK_TSMAESTRO_SHARD_LEASE SET leaseUntil = leaseUntil WHERE snapshotDate = ? AND shardId = ? AND owner = ? AND epoch = ? AND status = 'CLAIMED'");
+
+        private final String value;
+
+        CheckpointQueries(String value) {
+            this.value = value;
+        }
+
+        public String value() {
+            return value;
+        }
+    }
+
+    // Ordinals already committed for this snapshot; empty when the journal belongs to a different
+    // load, the table was emptied for another date since, or the load of this date already
+    // completed, so the caller starts over
+    public BitSet committedOrdinals(String snapshotDate, int totalEntities) {
+        BitSet committed = new BitSet(totalEntities);
+        List<int[]> ranges = jdbcTemplate.query(CheckpointQueries.QRY_CKPT_SELECT.value(),
+                (rs, rowNum) -> new int[]{rs.getInt("firstOrdinal"), rs.getInt("endOrdinal"), rs.getInt("totalEntities")},
+                snapshotDate);
+        if (ranges.isEmpty()) {
+            return committed;
+        }
+        if (!holdsLoadOf(snapshotDate)) {
+            log.info("WK_TSMAESTRO was emptied for another load after the last load of " + snapshotDate
+                    + ". Starting over.");
+            return committed;
+        }
+
+        for (int[] range : ranges) {
+            if (range[0] == RESET_MARKER) {
+                continue;
+            }
+            if (range[0] == COMPLETE_MARKER) {
+                log.info("Load of " + snapshotDate + " completed before. Starting over.");
+                return new BitSet(totalEntities);
+            }
+            if (range[2] != totalEntities) {
+                // Same date but a different snapshot content; ranges would not line up
+                log.warning("Checkpoints for " + snapshotDate + " were taken over " + range[2]
+                        + " entities, snapshot has " + totalEntities + ". Starting over.");
+                return new BitSet(totalEntities);
+            }
+            committed.set(range[0], range[1]);
+        }
+        return committed;
+    }
+
+    // Must run inside the batch's transaction. With a shard lease the batch only commits while
+    // that claim is still current; otherwise this throws and the batch rolls back.
+    public void record(String snapshotDate, int firstOrdinal, int endOrdinal, int totalEntities, int rowCount,
+                       ShardLeaseCoordinator.Shard lease) {
+        if (lease != null && jdbcTemplate.update(CheckpointQueries.QRY_CKPT_FENCE.value(), snapshotDate,
+                lease.getShardId(), lease.getOwner(), lease.getEpoch()) != 1) {
+            throw new IllegalStateException("Shard " + lease.getShardId() + " of " + snapshotDate
+                    + " was reclaimed from " + lease.getOwner() + ", rolling back the batch at entity " + firstOrdinal);
+        }
+        jdbcTemplate.update(CheckpointQueries.QRY_CKPT_INSERT.value(), snapshotDate, firstOrdinal, endOrdinal,
+                totalEntities, rowCount, new Timestamp(System.currentTimeMillis()));
+    }
+
+    public void markComplete(String snapshotDate, int totalEntities) {
+        jdbcTemplate.update(CheckpointQueries.QRY_CKPT_INSERT.value(), snapshotDate, COMPLETE_MARKER, COMPLETE_MARKER,
+                totalEntities, 0, new Timestamp(System.currentTimeMillis()));
+    }
+
+    // Whether WK_TSMAESTRO was last emptied for a load of this date, i.e. what it holds is that load's
+    public boolean holdsLoadOf(String snapshotDate) {
+        List<String> resets = jdbcTemplate.queryForList(CheckpointQueries.QRY_CKPT_LAST_RESET.value(), String.class);
+        return !resets.isEmpty() && resets.get(0).equals(snapshotDate);
+    }
+
+    // Called once WK_TSMAESTRO was emptied for a load of this date (null for an undated load)
+    public void reset(String snapshotDate) {
+        String key = snapshotDate == null ? UNDATED : snapshotDate;
+        int removed = jdbcTemplate.update(CheckpointQueries.QRY_CKPT_CLEAR.value(), key);
+        jdbcTemplate.update(CheckpointQueries.QRY_CKPT_INSERT.value(), key, RESET_MARKER, RESET_MARKER,
+                0, 0, new Timestamp(System.currentTimeMillis()));
+        log.info("Cleared " + removed + " load checkpoints of " + key);
+    }
+}
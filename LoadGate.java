@@ -0,0 +1,203 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+// Admission to WK_TSMAESTRO for every load in this JVM, whoever runs it: MaestroSnapshotScheduler,
+// the Batch job, DistributedLoadWorker or either DAO called directly.
+//   load(date, work)   single flight per snapshotDate: a second load of a date already running
+//                      waits for that run and gets its outcome instead of starting another
+//   write(date, work)  the table: one load writes at a time, since WK_TSMAESTRO, its checkpoint
+//                      journal and the published lookup generation are shared by all dates.
+//                      The table's owner is the Claim that took it, or the thread for a write
+//                      outside any load; only writes of that owner go straight through
+// The table is a permit rather than a lock so a load can take it on one thread and give it
+// back on another, as the Batch job does around its steps. SnapshotGeneration hears of every
+// take and release, so readers do not cache the table while a load writes it.
+@Component
+public class LoadGate {
+
+    private static final Logger log = Logger.getLogger(LoadGate.class.getName());
+
+    // Key of loads without a snapshotDate
+    private static final String UNDATED = "undated";
+
+    @Autowired
+    private SnapshotGeneration snapshotGeneration;
+
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    // One snapshotDate's load, from claim to release. Writes on the claiming thread act for it.
+    public final class Claim {
+        private final String key;
+        private final Map<String, Claim> claimingThreadLoads = loadsOnThread.get();
+        private final CompletableFuture<String> outcome = new CompletableFuture<>();
+        private boolean holdsTable;
+        private boolean ended;
+
+        private Claim(String key) {
+            this.key = key;
+        }
+
+        // Waits for the table and keeps it until the claim is released. The wait happens outside
+        // the claim's monitor, so release or fail from another thread is never stuck behind it.
+        public void holdTable() {
+            synchronized (this) {
+                if (holdsTable || ended) {
+                    return;
+                }
+            }
+            acquireTable(key, this);
+            synchronized (this) {
+                if (!holdsTable && !ended) {
+                    holdsTable = true;
+                    return;
+                }
+            }
+            // Ended, or held by a concurrent call, while this one waited
+            releaseTable();
+        }
+
+        public void release(String result) {
+            end();
+            outcome.complete(result);
+        }
+
+        public void fail(Throwable cause) {
+            end();
+            outcome.completeExceptionally(cause);
+        }
+
+        private synchronized void end() {
+            ended = true;
+            if (holdsTable) {
+                holdsTable = false;
+                releaseTable();
+            }
+            claimingThreadLoads.remove(key, this);
+            inFlight.remove(key, this);
+        }
+    }
+
+    private final ConcurrentMap<String, Claim> inFlight = new ConcurrentHashMap<>();
+    // Claims made on this thread by date; load() called again from within one of them runs nested
+    private final ThreadLocal<Map<String, Claim>> loadsOnThread = ThreadLocal.withInitial(ConcurrentHashMap::new);
+    private final Semaphore table = new Semaphore(1, true);
+    // The Claim or, for writes outside a load, the Thread the table was acquired for
+    private volatile Object tableOwner;
+
+    // Claims the date for the caller's load; null when a load of the date is already running
+    public Claim claim(String snapshotDate) {
+        String key = key(snapshotDate);
+        Claim claim = new Claim(key);
+        if (inFlight.putIfAbsent(key, claim) != null) {
+            return null;
+        }
+        claim.claimingThreadLoads.put(key, claim);
+        return claim;
+    }
+
+    // For loads that cannot wait inside load(): claims the date and holds the table until released
+    public Claim claimTable(String snapshotDate) {
+        Claim claim = claim(snapshotDate);
+        if (claim == null) {
+            throw new IllegalStateException("snapshotDate " + key(snapshotDate) + " is already being loaded");
+        }
+        try {
+            claim.holdTable();
+        } catch (RuntimeException e) {
+            claim.fail(e);
+            throw e;
+        }
+        return claim;
+    }
+
+    // Returns the outcome of the date's load, also when another caller was running it; that
+    // run's failure is rethrown as IllegalStateException
+    public <E extends Exception> String load(String snapshotDate, Work<String, E> work) throws E {
+        String key = key(snapshotDate);
+        if (loadsOnThread.get().containsKey(key)) {
+            return work.run();
+        }
+        Claim claim = new Claim(key);
+        Claim running = inFlight.putIfAbsent(key, claim);
+        if (running != null) {
+            log.info("Load of snapshotDate " + key + " already in flight, waiting for it");
+            try {
+                return running.outcome.join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("Load of snapshotDate " + key + " failed: "
+                        + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        claim.claimingThreadLoads.put(key, claim);
+        try {
+            String result = work.run();
+            claim.release(result);
+            return result;
+        } catch (Throwable t) {
+            claim.fail(t);
+            throw t;
+        }
+    }
+
+    public <T, E extends Exception> T write(String snapshotDate, Work<T, E> work) throws E {
+        String key = key(snapshotDate);
+        Claim claim = loadsOnThread.get().get(key);
+        Object owner = claim != null ? claim : Thread.currentThread();
+        if (tableOwner == owner) {
+            return work.run();
+        }
+        acquireTable(key, owner);
+        try {
+            return work.run();
+        } finally {
+            releaseTable();
+        }
+    }
+
+    public void write(String snapshotDate, Runnable work) {
+        write(snapshotDate, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public Set<String> inFlightDates() {
+        return new TreeSet<>(inFlight.keySet());
+    }
+
+    private void acquireTable(String key, Object owner) {
+        try {
+            table.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for WK_TSMAESTRO for " + key, e);
+        }
+        tableOwner = owner;
+        snapshotGeneration.loadStarted();
+    }
+
+    private void releaseTable() {
+        snapshotGeneration.loadFinished();
+        tableOwner = null;
+        table.release();
+    }
+
+    private static String key(String snapshotDate) {
+        return snapshotDate == null ? UNDATED : snapshotDate;
+    }
+}
@@ -0,0 +1,124 @@
+package com.socgen.riskweb.dao;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Where the WK_TSMAESTRO load writes. By default that is the application's shared JdbcTemplate
+// and transaction manager. With maestro.loader.datasource.enabled=true the load gets its own
+// Hikari pool instead, so long batches never hold connections interactive requests need:
+//   maestro.loader.datasource.url/username/password  default to spring.datasource.*
+//   maestro.loader.datasource.poolSize               one connection per writer, plus one
+//   maestro.loader.datasource.fetchSize              for the full-table reads
+//   maestro.loader.datasource.properties.*           driver properties, on top of the
+//                                                    statement caching and batch rewriting
+//                                                    defaults for the driver in the URL
+// The pool is not exposed as a DataSource bean: a second one would switch off Boot's own
+// DataSource, JdbcTemplate and transaction manager auto-configuration.
+@Component
+public class LoaderDatabase implements DisposableBean {
+
+    private static final Logger log = Logger.getLogger(LoaderDatabase.class.getName());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final TransactionTemplate transactionTemplate;
+    private final HikariDataSource pool;
+
+    public LoaderDatabase(JdbcTemplate sharedJdbcTemplate, PlatformTransactionManager sharedTransactionManager,
+                          Environment environment,
+                          @Value("${maestro.loader.datasource.enabled:false}") boolean enabled,
+                          @Value("${maestro.loader.datasource.url:${spring.datasource.url:}}") String url,
+                          @Value("${maestro.loader.datasource.username:${spring.datasource.username:}}") String username,
+                          @Value("${maestro.loader.datasource.password:${spring.datasource.password:}}") String password,
+                          @Value("${maestro.loader.datasource.poolSize:#{T(java.lang.Runtime).getRuntime().availableProcessors() * 2 + 1}}") int poolSize,
+                          @Value("${maestro.loader.datasource.fetchSize:5000}") int fetchSize) {
+        if (!enabled) {
+            this.pool = null;
+            this.jdbcTemplate = sharedJdbcTemplate;
+            this.transactionManager = sharedTransactionManager;
+            this.transactionTemplate = new TransactionTemplate(sharedTransactionManager);
+            return;
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("maestro-loader");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        // Loads run a few times a day; give the connections back in between
+        config.setMinimumIdle(0);
+        config.setIdleTimeout(60_000);
+        Map<String, String> properties = driverDefaults(url);
+        properties.putAll(Binder.get(environment)
+                .bind("maestro.loader.datasource.properties", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of()));
+        properties.forEach(config::addDataSourceProperty);
+
+        this.pool = new HikariDataSource(config);
+        this.jdbcTemplate = new JdbcTemplate(pool);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionManager = new DataSourceTransactionManager(pool);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        log.info("Loader pool of " + poolSize + " connections to " + url + " with driver properties " + properties.keySet());
+    }
+
+    // Server-side statement caching, so each batch does not parse and plan QRY_SAVE_PRIMARYROLE
+    // again, and multi-row rewriting of batched inserts where the driver supports it
+    static Map<String, String> driverDefaults(String url) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (url.startsWith("jdbc:postgresql:")) {
+            properties.put("reWriteBatchedInserts", "true");
+            properties.put("prepareThreshold", "1");
+            properties.put("preparedStatementCacheQueries", "256");
+        } else if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:")) {
+            properties.put("rewriteBatchedStatements", "true");
+            properties.put("useServerPrepStmts", "true");
+            properties.put("cachePrepStmts", "true");
+            properties.put("prepStmtCacheSize", "256");
+            properties.put("prepStmtCacheSqlLimit", "2048");
+        } else if (url.startsWith("jdbc:oracle:")) {
+            properties.put("oracle.jdbc.implicitStatementCacheSize", "64");
+        } else if (url.startsWith("jdbc:sqlserver:")) {
+            properties.put("disableStatementPooling", "false");
+            properties.put("statementPoolingCacheSize", "64");
+            properties.put("useBulkCopyForBatchInsert", "true");
+        }
+        return properties;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    // Transactions on the loader's connections; batches and their checkpoints commit in these
+    public TransactionTemplate getTransactionTemplate() {
+        return transactionTemplate;
+    }
+
+    // For callers that demarcate transactions themselves, e.g. Spring Batch tasklets around DAO calls
+    public PlatformTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+}
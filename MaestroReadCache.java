@@ -0,0 +1,121 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Bounded read-through cache of WK_TSMAESTRO rows by entityId for downstream readers.
+// Entries carry the SnapshotGeneration they were read under; a new committed load makes
+// all of them misses and the map is dropped in bulk on the next access. While a load is
+// writing the table rows are read straight through and not cached: its chunks commit one by
+// one, so what a reader sees then is a partly truncated or partly filled table.
+@Component
+public class MaestroReadCache {
+
+    private static final Logger log = Logger.getLogger(MaestroReadCache.class.getName());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SnapshotGeneration snapshotGeneration;
+
+    @Value("${maestro.cache.maxEntries:100000}")
+    private int maxEntries;
+
+    private static final class Entry {
+        private final long generation;
+        private final List<RegistrationLookupIndex.RegistrationRef> rows;
+
+        Entry(long generation, List<RegistrationLookupIndex.RegistrationRef> rows) {
+            this.generation = generation;
+            this.rows = rows;
+        }
+    }
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Access-ordered LinkedHashMap gives LRU eviction; guarded by its own monitor
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private long cachedGeneration;
+
+    public List<RegistrationLookupIndex.RegistrationRef> get(String entityId) {
+        // Read the generation before the database so a concurrent reload can only make us miss later
+        long generation = snapshotGeneration.current();
+        boolean cacheable = !snapshotGeneration.loadInProgress();
+
+        synchronized (entries) {
+            if (generation != cachedGeneration) {
+                entries.clear();
+                cachedGeneration = generation;
+            }
+            Entry entry = entries.get(entityId);
+            if (entry != null && entry.generation == generation) {
+                hits.incrementAndGet();
+                return entry.rows;
+            }
+        }
+
+        misses.incrementAndGet();
+        List<RegistrationLookupIndex.RegistrationRef> rows = Collections.unmodifiableList(jdbcTemplate.query(
+                DbeClientDaoImpl.AppQueries.QRY_READ_PRIMARYROLE_BY_ENTITY.value(),
+                (rs, rowNum) -> new RegistrationLookupIndex.RegistrationRef(rs.getString("code"), rs.getString("subbookingId")),
+                entityId));
+
+        synchronized (entries) {
+            if (cacheable && generation == cachedGeneration) {
+                entries.put(entityId, new Entry(generation, rows));
+            }
+        }
+        return rows;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : hits.get() / (double) total;
+    }
+
+    public void logStats() {
+        log.info("WK_TSMAESTRO cache: size=" + size() + ", hits=" + hits.get() + ", misses=" + misses.get()
+                + ", evictions=" + evictions.get() + ", hitRate=" + String.format("%.2f", getHitRate())
+                + ", generation=" + cachedGeneration);
+    }
+}
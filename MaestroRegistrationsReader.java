@@ -0,0 +1,148 @@
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+
+// Streams InternalRegistrations off the Maestro response for the primary role batch job.
+// Unpaged (stride 0) it reads the whole snapshot from one request; paged it reads pages
+// partition, partition + stride, partition + 2 * stride, ... until a short page, so several
+// partitions share the snapshot without coordinating. The item count kept by the base
+// class makes a restarted step resume at the page holding its next unread entity.
+public class MaestroRegistrationsReader extends AbstractItemCountingItemStreamItemReader<InternalRegistrations> {
+
+    private static final Logger log = Logger.getLogger(MaestroRegistrationsReader.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final RestClientUtility restClientUtility;
+    private final MaestroTransport maestroTransport;
+    private final MaestroResilience maestroResilience;
+    private final PartitionedSnapshotFetcher partitionedSnapshotFetcher;
+    private final String baseUrl;
+    private final int partition;
+    private final int stride;
+
+    private final Deque<InternalRegistrations> pending = new ArrayDeque<>();
+    private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+    private HttpHeaders headers;
+    private MaestroTransport.Response response;
+    private InputStream body;
+    private InternalRegistrationsSplitter splitter;
+    private int page;
+    private int pageItems;
+    private boolean done;
+
+    public MaestroRegistrationsReader(RestClientUtility restClientUtility, MaestroTransport maestroTransport,
+                                      MaestroResilience maestroResilience,
+                                      PartitionedSnapshotFetcher partitionedSnapshotFetcher,
+                                      String baseUrl, int partition, int stride) {
+        this.restClientUtility = restClientUtility;
+        this.maestroTransport = maestroTransport;
+        this.maestroResilience = maestroResilience;
+        this.partitionedSnapshotFetcher = partitionedSnapshotFetcher;
+        this.baseUrl = baseUrl;
+        this.partition = partition;
+        this.stride = stride;
+        setName("maestroRegistrationsReader");
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        headers = restClientUtility.primaryroleHeaders(restClientUtility.generatePrimaryroleToken());
+        page = 0;
+        done = false;
+    }
+
+    @Override
+    protected InternalRegistrations doRead() throws Exception {
+        while (pending.isEmpty()) {
+            if (!fill()) {
+                return null;
+            }
+        }
+        return pending.poll();
+    }
+
+    // On restart, skip whole pages instead of re-reading them
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (stride == 0) {
+            super.jumpToItem(itemIndex);
+            return;
+        }
+        int pageSize = partitionedSnapshotFetcher.getPartitionSize();
+        page = itemIndex / pageSize;
+        for (int skipped = 0; skipped < itemIndex % pageSize; skipped++) {
+            doRead();
+        }
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        closePage();
+        pending.clear();
+    }
+
+    private boolean fill() throws IOException {
+        if (body == null) {
+            if (done) {
+                return false;
+            }
+            openPage();
+        }
+
+        int read = body.read(buffer);
+        List<InternalRegistrations> items = read < 0 ? splitter.endOfInput() : splitter.feed(buffer, 0, read);
+        pending.addAll(items);
+        pageItems += items.size();
+
+        if (read < 0) {
+            closePage();
+            // Only a full page can have a successor
+            if (stride == 0 || pageItems < partitionedSnapshotFetcher.getPartitionSize()) {
+                done = true;
+            } else {
+                page++;
+            }
+        }
+        return true;
+    }
+
+    private void openPage() throws IOException {
+        String url = stride == 0 ? baseUrl : partitionedSnapshotFetcher.partitionUrl(baseUrl, partition + page * stride);
+        // Only the exchange is retried here: the page is read item by item, so a failure later in
+        // the body fails the chunk, and a restart of the job resumes from the last committed one
+        response = maestroResilience.call("primaryRole batch read", () -> maestroTransport.send(url, headers), false);
+        if (response.getStatus() != 200) {
+            int status = response.getStatus();
+            closePage();
+            throw new IOException("API returned status code: " + status + " for " + url);
+        }
+        log.info("Reading Maestro page " + url);
+        body = RestClientUtility.openDecodedStream(response.getBody());
+        splitter = new InternalRegistrationsSplitter(RestClientUtility.createMapper());
+        pageItems = 0;
+    }
+
+    private void closePage() throws IOException {
+        try {
+            if (body != null) {
+                body.close();
+            }
+            if (response != null) {
+                response.close();
+            }
+        } finally {
+            body = null;
+            response = null;
+        }
+    }
+}
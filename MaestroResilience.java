@@ -0,0 +1,342 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+// Retry, hedging and circuit breaking around Maestro calls.
+// - retryable statuses and IO errors are retried with exponential backoff and full jitter;
+//   malformed JSON is not, it would fail the same way again
+// - hedging is opt-in (maestro.resilience.hedge.enabled): once enough latencies are known, a
+//   call slower than the configured percentile gets a second identical request and the first
+//   successful answer wins. The loser is only cancelled, not interrupted mid-read, so calls
+//   that move a whole snapshot body must pass hedge = false
+// - consecutive failed attempts open the circuit; while open, calls fail immediately and
+//   after the cool-down a single trial call decides whether it closes again. A call whose
+//   own failure opens the circuit stops retrying and reports that failure, not the open circuit
+// Latencies and circuit state are kept per call name: a slow snapshot download must neither
+// set the hedge threshold of partition pages nor open the circuit of token requests.
+@Component("maestroResilience")
+public class MaestroResilience {
+
+    private static final Logger log = Logger.getLogger(MaestroResilience.class.getName());
+
+    private static final int LATENCY_WINDOW = 128;
+
+    @Value("${maestro.resilience.maxAttempts:4}")
+    private int maxAttempts;
+
+    @Value("${maestro.resilience.baseBackoffMs:500}")
+    private long baseBackoffMs;
+
+    @Value("${maestro.resilience.maxBackoffMs:30000}")
+    private long maxBackoffMs;
+
+    @Value("${maestro.resilience.retryableStatuses:408,429,500,502,503,504}")
+    private List<Integer> retryableStatuses;
+
+    @Value("${maestro.resilience.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${maestro.resilience.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${maestro.resilience.hedge.minSamples:20}")
+    private int hedgeMinSamples;
+
+    @Value("${maestro.resilience.breaker.failureThreshold:5}")
+    private int failureThreshold;
+
+    @Value("${maestro.resilience.breaker.openMs:60000}")
+    private long openMillis;
+
+    public static class CircuitOpenException extends RuntimeException {
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    // A response status the caller does not accept; retried when it is one of retryableStatuses
+    public static class StatusException extends IOException {
+        private final int status;
+
+        public StatusException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    private enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    // Circuit and latency window of one call name; guarded by its own monitor
+    private static final class CallState {
+        private CircuitState state = CircuitState.CLOSED;
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean trialInFlight;
+
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int latencyCount;
+        private int latencyNext;
+    }
+
+    private final ConcurrentMap<String, CallState> calls = new ConcurrentHashMap<>();
+
+    private final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "maestro-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public <T> T call(String name, Callable<T> request) throws IOException {
+        return call(name, request, hedgeEnabled);
+    }
+
+    // Use hedge = false for calls with side effects, e.g. downloads into a shared file
+    public <T> T call(String name, Callable<T> request, boolean hedge) throws IOException {
+        CallState call = calls.computeIfAbsent(name, key -> new CallState());
+        Exception lastFailure = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                acquirePermission(call, name);
+            } catch (CircuitOpenException e) {
+                if (lastFailure == null) {
+                    throw e;
+                }
+                // Opened by a concurrent call meanwhile; this call still failed on its own
+                break;
+            }
+            long start = System.nanoTime();
+            try {
+                T result = hedge ? callHedged(call, request) : request.call();
+                onSuccess(call, name, System.nanoTime() - start);
+                return result;
+            } catch (Exception e) {
+                boolean opened = onFailure(call, name);
+                lastFailure = e;
+                if (opened || !isRetryable(e) || attempt == maxAttempts) {
+                    break;
+                }
+                long backoff = backoffMillis(attempt);
+                log.warning(name + " attempt " + attempt + " of " + maxAttempts + " failed (" + e.getMessage()
+                        + "), retrying in " + backoff + " ms");
+                sleep(backoff);
+            }
+        }
+
+        if (lastFailure instanceof IOException) {
+            throw (IOException) lastFailure;
+        }
+        if (lastFailure instanceof RuntimeException) {
+            throw (RuntimeException) lastFailure;
+        }
+        throw new IOException(name + " failed", lastFailure);
+    }
+
+    public boolean isOpen(String name) {
+        CallState call = calls.get(name);
+        if (call == null) {
+            return false;
+        }
+        synchronized (call) {
+            return call.state == CircuitState.OPEN && System.currentTimeMillis() < call.openUntil;
+        }
+    }
+
+    private <T> T callHedged(CallState call, Callable<T> request) throws Exception {
+        long threshold = hedgeThresholdMillis(call);
+        if (threshold < 0) {
+            return request.call();
+        }
+
+        Future<T> primary = hedgeExecutor.submit(request);
+        try {
+            return primary.get(threshold, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.info("Maestro call slower than p" + Math.round(hedgePercentile * 100) + " (" + threshold
+                    + " ms), sending a hedged request");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        CompletableFuture<T> first = toCompletable(primary);
+        CompletableFuture<T> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return request.call();
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, hedgeExecutor);
+
+        try {
+            // First success wins; a failure only counts once both have failed
+            CompletableFuture<T> winner = new CompletableFuture<>();
+            first.whenComplete((value, error) -> completeIfSuccess(winner, value, error, second));
+            second.whenComplete((value, error) -> completeIfSuccess(winner, value, error, first));
+            return winner.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            primary.cancel(true);
+            second.cancel(true);
+        }
+    }
+
+    private static <T> void completeIfSuccess(CompletableFuture<T> winner, T value, Throwable error,
+                                              CompletableFuture<T> other) {
+        if (error == null) {
+            if (!winner.complete(value)) {
+                // The losing response may hold a live body stream, e.g. an HTTP/2 stream
+                closeQuietly(value);
+            }
+        } else if (other.isCompletedExceptionally()) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private static void closeQuietly(Object value) {
+        if (value instanceof Closeable) {
+            try {
+                ((Closeable) value).close();
+            } catch (IOException e) {
+                log.fine("Failed to close hedged response: " + e.getMessage());
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> toCompletable(Future<T> future) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, hedgeExecutor);
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    private boolean isRetryable(Exception e) {
+        if (e instanceof CircuitOpenException) {
+            return false;
+        }
+        if (e instanceof HttpStatusCodeException) {
+            return retryableStatuses.contains(((HttpStatusCodeException) e).getStatusCode().value());
+        }
+        if (e instanceof StatusException) {
+            return retryableStatuses.contains(((StatusException) e).getStatus());
+        }
+        if (e instanceof JsonProcessingException) {
+            return false;
+        }
+        return e instanceof ResourceAccessException || e instanceof IOException;
+    }
+
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void acquirePermission(CallState call, String name) {
+        synchronized (call) {
+            if (call.state == CircuitState.OPEN) {
+                if (System.currentTimeMillis() < call.openUntil) {
+                    throw new CircuitOpenException("Circuit open for " + name + ", not attempted");
+                }
+                call.state = CircuitState.HALF_OPEN;
+                call.trialInFlight = false;
+            }
+            if (call.state == CircuitState.HALF_OPEN) {
+                if (call.trialInFlight) {
+                    throw new CircuitOpenException("Circuit half-open for " + name + ", trial call in progress, not attempted");
+                }
+                call.trialInFlight = true;
+            }
+        }
+    }
+
+    private void onSuccess(CallState call, String name, long elapsedNanos) {
+        synchronized (call) {
+            if (call.state != CircuitState.CLOSED) {
+                log.info("Maestro circuit closed (" + name + ")");
+            }
+            call.state = CircuitState.CLOSED;
+            call.consecutiveFailures = 0;
+            call.trialInFlight = false;
+
+            call.latencies[call.latencyNext] = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            call.latencyNext = (call.latencyNext + 1) % LATENCY_WINDOW;
+            call.latencyCount = Math.min(call.latencyCount + 1, LATENCY_WINDOW);
+        }
+    }
+
+    // True when this failure opened the circuit
+    private boolean onFailure(CallState call, String name) {
+        synchronized (call) {
+            call.consecutiveFailures++;
+            call.trialInFlight = false;
+            if (call.state == CircuitState.HALF_OPEN || call.consecutiveFailures >= failureThreshold) {
+                call.state = CircuitState.OPEN;
+                call.openUntil = System.currentTimeMillis() + openMillis;
+                log.severe("Maestro circuit opened after " + call.consecutiveFailures + " failures (" + name
+                        + "), failing fast for " + openMillis + " ms");
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // -1 until enough calls of this name have been observed
+    private long hedgeThresholdMillis(CallState call) {
+        long[] sorted;
+        synchronized (call) {
+            if (call.latencyCount < hedgeMinSamples) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(call.latencies, call.latencyCount);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(hedgePercentile * sorted.length) - 1);
+        return Math.max(1, sorted[Math.max(0, index)]);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while backing off", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import org.springframework.aot.AotDetector;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.Model.Registration;
+import com.socgen.riskweb.Model.ResponseInternal;
+import com.socgen.riskweb.Model.SubBookingEntity;
+import com.socgen.riskweb.dao.DbeClientDaoR2dbcImpl;
+
+// Hints for the ahead-of-time processed context: the Maestro payload types Jackson binds
+// reflectively, and the classifier StructuralScanner loads by name. Without them the
+// AOT build still works on the JVM, but a native image would fail at the first parse.
+//
+// The AOT build also fixes which beans exist. The @ConditionalOnProperty choices are
+// evaluated once, with the properties the build sees, and are not evaluated again at start:
+//   maestro.transport, maestro.loader.r2dbc.enabled, maestro.batch.enabled,
+//   maestro.changefeed.sink and maestro.export.parquet.dir
+// They have to be set at build time, to the values the job runs with. An AOT start
+// whose properties disagree with the generated context fails instead of running with the
+// wrong beans.
+@Configuration(proxyBeanMethods = false)
+@ImportRuntimeHints(MaestroRuntimeHints.Registrar.class)
+public class MaestroRuntimeHints {
+
+    @Bean
+    static SmartInitializingSingleton maestroAotConditionCheck(ListableBeanFactory beanFactory, Environment environment) {
+        return () -> {
+            if (!AotDetector.useGeneratedArtifacts()) {
+                return;
+            }
+            List<String> mismatches = new ArrayList<>();
+            String transport = environment.getProperty("maestro.transport", "resttemplate");
+            expect(mismatches, beanFactory, HttpClientMaestroTransport.class, "http2".equals(transport),
+                    "maestro.transport=" + transport);
+            expect(mismatches, beanFactory, RestTemplateMaestroTransport.class, "resttemplate".equals(transport),
+                    "maestro.transport=" + transport);
+            expect(mismatches, beanFactory, DbeClientDaoR2dbcImpl.class,
+                    "true".equalsIgnoreCase(environment.getProperty("maestro.loader.r2dbc.enabled")),
+                    "maestro.loader.r2dbc.enabled");
+            expect(mismatches, beanFactory, PrimaryRoleBatchConfig.class,
+                    "true".equalsIgnoreCase(environment.getProperty("maestro.batch.enabled")), "maestro.batch.enabled");
+            String sink = environment.getProperty("maestro.changefeed.sink", "");
+            expect(mismatches, beanFactory, JmsChangeFeedSink.class, "jms".equals(sink), "maestro.changefeed.sink=" + sink);
+            expect(mismatches, beanFactory, InProcessChangeFeedSink.class, "inprocess".equals(sink),
+                    "maestro.changefeed.sink=" + sink);
+            String parquetDir = environment.getProperty("maestro.export.parquet.dir");
+            expect(mismatches, beanFactory, ParquetRowExportSink.class,
+                    parquetDir != null && !"false".equalsIgnoreCase(parquetDir), "maestro.export.parquet.dir");
+            if (!mismatches.isEmpty()) {
+                throw new IllegalStateException("The AOT context was generated with other maestro.* properties than this "
+                        + "run: " + mismatches + ". Regenerate the AOT sources with the properties the job runs with.");
+            }
+        };
+    }
+
+    private static void expect(List<String> mismatches, ListableBeanFactory beanFactory, Class<?> type,
+                               boolean wanted, String property) {
+        boolean present = beanFactory.getBeanNamesForType(type, false, false).length > 0;
+        if (present != wanted) {
+            mismatches.add(type.getSimpleName() + (present ? " present" : " missing") + " with " + property);
+        }
+    }
+
+    static class Registrar implements RuntimeHintsRegistrar {
+
+        private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            bindingRegistrar.registerReflectionHints(hints.reflection(),
+                    ResponseInternal.class, InternalRegistrations.class, Registration.class, SubBookingEntity.class);
+
+            hints.reflection().registerType(TypeReference.of("VectorStructuralClassifier"),
+                    MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+    }
+}
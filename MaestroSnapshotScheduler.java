@@ -0,0 +1,195 @@
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import com.socgen.riskweb.Model.ResponseInternal;
+import com.socgen.riskweb.dao.DbeClientDaoImpl;
+import com.socgen.riskweb.dao.LoadGate;
+
+// Runs primary role loads by snapshotDate.
+//   - maestro.schedule.cron loads SnapshotDates.current() (disabled with "-", the default)
+//   - one load per date at a time: a second request for a date already running waits for
+//     that run and reports its outcome instead of starting another (LoadGate, shared with
+//     every other way of loading WK_TSMAESTRO)
+//   - backfill(first, last) fetches up to maestro.schedule.backfillParallelism dates at once
+//     and hands them on one by one in date order. WK_TSMAESTRO keeps one date, so only the
+//     last date of the range is loaded into it, and only if it is not older than current();
+//     every other date goes to the export sinks only; the lookup indexes and the change feed
+//     follow the table.
+@Component
+@EnableScheduling
+@ManagedResource(objectName = "com.socgen.riskweb:type=Loader,name=MaestroSnapshotScheduler")
+public class MaestroSnapshotScheduler {
+
+    private static final Logger log = Logger.getLogger(MaestroSnapshotScheduler.class.getName());
+
+    @Autowired
+    private RestClientUtility restClientUtility;
+
+    @Autowired
+    private DbeClientDaoImpl clientDao;
+
+    @Autowired
+    private SnapshotDates snapshotDates;
+
+    @Autowired
+    private LoadGate loadGate;
+
+    @Value("${maestro.schedule.backfillParallelism:2}")
+    private int backfillParallelism;
+
+    @Scheduled(cron = "${maestro.schedule.cron:-}")
+    public void loadScheduledSnapshot() {
+        LocalDate snapshotDate = snapshotDates.current();
+        log.info("Scheduled load of snapshotDate " + snapshotDate + ": " + load(snapshotDate));
+    }
+
+    @ManagedOperation
+    public String loadSnapshot(String snapshotDate) {
+        return load(LocalDate.parse(snapshotDate));
+    }
+
+    // Returns the outcome of the date's load, also when another caller was running it
+    public String load(LocalDate snapshotDate) {
+        try {
+            return loadGate.load(snapshotDate.toString(), () -> {
+                ResponseInternal snapshot = fetch(snapshotDate);
+                return snapshot == null ? "no snapshot" : write(snapshotDate, snapshot);
+            });
+        } catch (Exception e) {
+            return failure(snapshotDate, e);
+        }
+    }
+
+    @ManagedOperation
+    public String backfill(String firstDate, String lastDate) {
+        return backfill(LocalDate.parse(firstDate), LocalDate.parse(lastDate)).toString();
+    }
+
+    // Outcome per date, in date order. Dates already being loaded elsewhere are left to that run.
+    public Map<LocalDate, String> backfill(LocalDate firstDate, LocalDate lastDate) {
+        List<LocalDate> dates = SnapshotDates.range(firstDate, lastDate);
+        Map<LocalDate, String> outcomes = new LinkedHashMap<>();
+        List<LocalDate> claimed = new ArrayList<>();
+        Map<LocalDate, LoadGate.Claim> runs = new LinkedHashMap<>();
+        for (LocalDate date : dates) {
+            LoadGate.Claim run = loadGate.claim(date.toString());
+            if (run != null) {
+                claimed.add(date);
+                runs.put(date, run);
+            } else {
+                outcomes.put(date, "already in flight");
+            }
+        }
+        // An older range leaves the table on the snapshot it already holds
+        LocalDate tableDate = claimed.isEmpty() ? null : claimed.get(claimed.size() - 1);
+        if (tableDate != null && tableDate.isBefore(snapshotDates.current())) {
+            tableDate = null;
+        }
+        log.info("Backfilling " + claimed.size() + " snapshotDates from " + firstDate + " to " + lastDate
+                + " with " + backfillParallelism + " fetches in parallel");
+
+        int parallelism = Math.max(1, backfillParallelism);
+        ExecutorService fetchers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "maestro-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // A window of fetches runs ahead of the writer; a fetch is only started once the date
+        // parallelism places before it has been written, so at most that many snapshots wait on heap
+        List<Future<ResponseInternal>> fetches = new ArrayList<>();
+        try {
+            for (int i = 0; i < claimed.size(); i++) {
+                while (fetches.size() < claimed.size() && fetches.size() < i + parallelism) {
+                    LocalDate date = claimed.get(fetches.size());
+                    fetches.add(fetchers.submit(() -> fetch(date)));
+                }
+                LocalDate date = claimed.get(i);
+                String outcome;
+                try {
+                    ResponseInternal snapshot = fetches.get(i).get();
+                    fetches.set(i, null);
+                    if (snapshot == null) {
+                        outcome = "no snapshot";
+                    } else if (date.equals(tableDate)) {
+                        outcome = write(date, snapshot);
+                    } else {
+                        outcome = export(date, snapshot);
+                    }
+                } catch (ExecutionException e) {
+                    outcome = failure(date, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warning("Backfill interrupted before snapshotDate " + date);
+                    break;
+                } catch (Exception e) {
+                    outcome = failure(date, e);
+                }
+                outcomes.put(date, finish(runs.get(date), outcome));
+            }
+        } finally {
+            fetchers.shutdownNow();
+            // Dates not reached, e.g. after an interrupt, are released for a later run
+            for (LocalDate date : claimed) {
+                if (!outcomes.containsKey(date)) {
+                    outcomes.put(date, finish(runs.get(date), "not run"));
+                }
+            }
+        }
+
+        Map<LocalDate, String> ordered = new LinkedHashMap<>();
+        for (LocalDate date : dates) {
+            ordered.put(date, outcomes.get(date));
+        }
+        log.info("Backfill " + firstDate + " .. " + lastDate + " done: " + ordered);
+        return ordered;
+    }
+
+    @ManagedAttribute
+    public String getInFlightDates() {
+        return loadGate.inFlightDates().toString();
+    }
+
+    private ResponseInternal fetch(LocalDate snapshotDate) throws Exception {
+        log.info("Fetching snapshotDate " + snapshotDate);
+        return restClientUtility.sendPrimaryroleApi(snapshotDate);
+    }
+
+    private String write(LocalDate snapshotDate, ResponseInternal snapshot) {
+        log.info("Writing snapshotDate " + snapshotDate);
+        clientDao.savePrimaryroleApi(snapshot, snapshotDate.toString());
+        return "loaded";
+    }
+
+    private String export(LocalDate snapshotDate, ResponseInternal snapshot) {
+        log.info("Exporting snapshotDate " + snapshotDate + " without loading it into WK_TSMAESTRO");
+        clientDao.exportPrimaryroleApi(snapshot, snapshotDate.toString());
+        return "exported";
+    }
+
+    private String failure(LocalDate snapshotDate, Exception e) {
+        log.severe("Load of snapshotDate " + snapshotDate + " failed: " + e.getMessage());
+        return "failed: " + e.getMessage();
+    }
+
+    private String finish(LoadGate.Claim run, String outcome) {
+        run.release(outcome);
+        return outcome;
+    }
+}
@@ -0,0 +1,130 @@
+package com.socgen.riskweb.dao;
+
+import com.socgen.riskweb.Model.MaestroTableEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnit;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.logging.Logger;
+
+// Bulk insert of MaestroTableEntity rows through JPA. maestro.jpa.bulk.mode picks the path:
+//   chunked    (default) one transaction; persist, and flush + clear every chunkSize entities so
+//              the persistence context never holds more than a chunk. Inserts of one chunk go
+//              out as a single JDBC batch and nothing is dirty checked twice
+//   stateless  a Hibernate StatelessSession: no persistence context at all, no dirty checking
+//   repository MaestroTableRepository.saveAll in a transaction, as before
+// Either bulk mode only batches when the entity's id is not IDENTITY generated; Hibernate
+// has to run IDENTITY inserts one by one to read the keys back.
+@Component
+public class MaestroTableBulkWriter {
+
+    private static final Logger log = Logger.getLogger(MaestroTableBulkWriter.class.getName());
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MaestroTableRepository maestroTableRepository;
+
+    @Value("${maestro.jpa.bulk.mode:chunked}")
+    private String mode;
+
+    @Value("${maestro.jpa.bulk.chunkSize:1000}")
+    private int chunkSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // All or nothing: returns the number of entities inserted once they are committed
+    public int saveAll(Iterable<MaestroTableEntity> entities) {
+        long startTime = System.currentTimeMillis();
+        int saved;
+        switch (mode) {
+            case "chunked":
+                saved = saveChunked(entities);
+                break;
+            case "stateless":
+                saved = saveStateless(entities);
+                break;
+            case "repository":
+                saved = saveThroughRepository(entities);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown maestro.jpa.bulk.mode: " + mode);
+        }
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - startTime);
+        log.info("Inserted " + saved + " MaestroTableEntity rows (" + mode + ") in " + elapsedMillis + " ms, "
+                + String.format("%.2f", saved * 1000.0 / elapsedMillis) + " records/second");
+        return saved;
+    }
+
+    private int saveChunked(Iterable<MaestroTableEntity> entities) {
+        Integer saved = transactionTemplate.execute(status -> {
+            Session session = entityManager.unwrap(Session.class);
+            session.setJdbcBatchSize(chunkSize);
+            // Flushes happen at chunk boundaries only, never ahead of a query
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            int count = 0;
+            for (MaestroTableEntity entity : entities) {
+                entityManager.persist(entity);
+                if (++count % chunkSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+            return count;
+        });
+        return saved == null ? 0 : saved;
+    }
+
+    private int saveStateless(Iterable<MaestroTableEntity> entities) {
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            session.setJdbcBatchSize(chunkSize);
+            Transaction transaction = session.beginTransaction();
+            try {
+                int count = 0;
+                for (MaestroTableEntity entity : entities) {
+                    session.insert(entity);
+                    count++;
+                }
+                transaction.commit();
+                return count;
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private int saveThroughRepository(Iterable<MaestroTableEntity> entities) {
+        Integer saved = transactionTemplate.execute(status -> {
+            int count = 0;
+            for (MaestroTableEntity ignored : maestroTableRepository.saveAll(entities)) {
+                count++;
+            }
+            return count;
+        });
+        return saved == null ? 0 : saved;
+    }
+}
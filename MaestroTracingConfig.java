@@ -0,0 +1,68 @@
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+// Tracing of a load run: a root span per sendPrimaryroleApi / savePrimaryroleApi call with
+// children for the token, HTTP exchange, decompression, parsing and every executeBatch.
+// maestro.tracing.exporter picks where spans go:
+//   none  (default) no-op tracer, spans cost nothing
+//   otlp  OTLP/gRPC to maestro.tracing.otlpEndpoint
+//   file  one JSON line per span appended to maestro.tracing.file
+// An OpenTelemetry bean defined elsewhere (an agent or starter) takes precedence.
+@Configuration(proxyBeanMethods = false)
+public class MaestroTracingConfig {
+
+    private static final Logger log = Logger.getLogger(MaestroTracingConfig.class.getName());
+
+    public static final String INSTRUMENTATION_NAME = "com.socgen.riskweb.maestro";
+
+    @Bean
+    @ConditionalOnMissingBean(OpenTelemetry.class)
+    public OpenTelemetry maestroOpenTelemetry(@Value("${maestro.tracing.exporter:none}") String exporter,
+                                              @Value("${maestro.tracing.otlpEndpoint:http://localhost:4317}") String otlpEndpoint,
+                                              @Value("${maestro.tracing.file:maestro-traces.jsonl}") String traceFile,
+                                              @Value("${maestro.tracing.serviceName:maestro-loader}") String serviceName) {
+        SpanExporter spanExporter;
+        switch (exporter) {
+            case "otlp":
+                spanExporter = OtlpGrpcSpanExporter.builder().setEndpoint(otlpEndpoint).build();
+                break;
+            case "file":
+                spanExporter = new FileSpanExporter(Paths.get(traceFile));
+                break;
+            case "none":
+                return OpenTelemetry.noop();
+            default:
+                throw new IllegalArgumentException("Unknown maestro.tracing.exporter: " + exporter);
+        }
+        log.info("Tracing Maestro runs to " + ("otlp".equals(exporter) ? otlpEndpoint : traceFile));
+
+        Resource resource = Resource.getDefault()
+                .merge(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), serviceName)));
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .setResource(resource)
+                .addSpanProcessor(BatchSpanProcessor.builder(spanExporter).build())
+                .build();
+        // Closed with the context, which flushes the spans still queued
+        return OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build();
+    }
+
+    @Bean
+    public Tracer maestroTracer(OpenTelemetry openTelemetry) {
+        return openTelemetry.getTracer(INSTRUMENTATION_NAME);
+    }
+}
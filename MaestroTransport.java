@@ -0,0 +1,47 @@
+import org.springframework.http.HttpHeaders;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+// HTTP engine behind RestClientUtility's Maestro GETs. Selected with maestro.transport:
+// resttemplate (default) or http2 for the java.net.http client.
+// Statuses >= 400 are raised as the HttpStatusCodeException RestTemplate's default error
+// handler would throw, so MaestroResilience and isErrorStatus behave the same on both engines.
+public interface MaestroTransport {
+
+    Response send(String url, HttpHeaders headers) throws IOException;
+
+    CompletableFuture<Response> sendAsync(String url, HttpHeaders headers);
+
+    // The body is a live stream on engines that support it; close the response when done
+    final class Response implements Closeable {
+        private final int status;
+        private final HttpHeaders headers;
+        private final InputStream body;
+
+        Response(int status, HttpHeaders headers, InputStream body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
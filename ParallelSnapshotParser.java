@@ -0,0 +1,149 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.Model.ResponseInternal;
+
+// Multi-core parse of a fully decoded snapshot. StructuralScanner finds the byte range of
+// every InternalRegistrations element, the ranges are parsed on a fork-join pool, and each
+// result lands in the slot of its element ordinal, so document order is kept without a merge.
+// Produces one ResponseInternal per internalRegistrations array, like the sequential parse.
+@Component("parallelSnapshotParser")
+public class ParallelSnapshotParser {
+
+    private static final Logger log = Logger.getLogger(ParallelSnapshotParser.class.getName());
+
+    private static final byte[] OPEN_ARRAY = {'['};
+    private static final byte[] CLOSE_ARRAY = {']'};
+
+    private final ForkJoinPool pool;
+    private final StructuralScanner.Classifier classifier = StructuralScanner.bestClassifier();
+
+    // Ranges smaller than this are parsed by one task instead of being split further
+    @Value("${maestro.parse.minTaskBytes:262144}")
+    private int minTaskBytes;
+
+    public ParallelSnapshotParser(@Value("${maestro.parse.parallelism:0}") int parallelism) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    public List<ResponseInternal> parse(ByteBuffer json, ObjectMapper mapperObj) throws IOException {
+        long startTime = System.currentTimeMillis();
+        StructuralScanner.Index index = StructuralScanner.scan(json, classifier);
+        long scanMillis = System.currentTimeMillis() - startTime;
+
+        InternalRegistrations[] parsed = new InternalRegistrations[index.elementCount()];
+        ObjectReader reader = mapperObj.readerFor(InternalRegistrations.class);
+        try {
+            pool.invoke(new ParseTask(json, index, reader, parsed, 0, parsed.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<ResponseInternal> responseObjects = new ArrayList<>(index.arrayCount());
+        for (int array = 0; array < index.arrayCount(); array++) {
+            ResponseInternal wrapper = new ResponseInternal();
+            wrapper.setInternalRegistrations(new ArrayList<>(
+                    Arrays.asList(parsed).subList(index.arrayStart(array), index.arrayStart(array + 1))));
+            responseObjects.add(wrapper);
+        }
+
+        log.info("Parsed " + parsed.length + " internal registrations from " + json.limit() + " bytes in "
+                + (System.currentTimeMillis() - startTime) + " ms (scan " + scanMillis + " ms, "
+                + classifier.getClass().getSimpleName() + ", parallelism " + pool.getParallelism() + ")");
+        return responseObjects;
+    }
+
+    private final class ParseTask extends RecursiveAction {
+        private final ByteBuffer json;
+        private final StructuralScanner.Index index;
+        private final ObjectReader reader;
+        private final InternalRegistrations[] parsed;
+        private final int from;
+        private final int to;
+
+        ParseTask(ByteBuffer json, StructuralScanner.Index index, ObjectReader reader,
+                  InternalRegistrations[] parsed, int from, int to) {
+            this.json = json;
+            this.index = index;
+            this.reader = reader;
+            this.parsed = parsed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && index.end(to - 1) - index.start(from) > minTaskBytes) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseTask(json, index, reader, parsed, from, mid),
+                        new ParseTask(json, index, reader, parsed, mid, to));
+                return;
+            }
+            try {
+                if (!parseRange()) {
+                    for (int element = from; element < to; element++) {
+                        parsed[element] = reader.readValue(open(index.start(element), index.end(element)));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // One parser for the whole range: the elements and the commas between them, wrapped
+        // back into an array. False when the range also holds non-object array members
+        private boolean parseRange() throws IOException {
+            if (!onlySeparatorsBetweenElements()) {
+                return false;
+            }
+            InputStream range = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                    new ByteArrayInputStream(OPEN_ARRAY), open(index.start(from), index.end(to - 1)),
+                    new ByteArrayInputStream(CLOSE_ARRAY))));
+            int element = from;
+            try (MappingIterator<InternalRegistrations> elements = reader.readValues(range)) {
+                while (elements.hasNextValue()) {
+                    parsed[element++] = elements.nextValue();
+                }
+            }
+            return true;
+        }
+
+        private boolean onlySeparatorsBetweenElements() {
+            for (int element = from + 1; element < to; element++) {
+                for (int i = index.end(element - 1); i < index.start(element); i++) {
+                    byte b = json.get(i);
+                    if (b != ',' && b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private InputStream open(int start, int end) {
+            if (json.hasArray()) {
+                return new ByteArrayInputStream(json.array(), json.arrayOffset() + start, end - start);
+            }
+            return new ByteBufferBackedInputStream(json.slice(start, end - start));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Logger;
+
+import com.socgen.riskweb.dao.PrimaryRoleRowSink;
+
+// Writes each snapshot's rows as <dir>/snapshotDate=<date>/primaryrole.parquet in the
+// CODAPP/CODTRS/NUMNTTIPL/NUMIPL/CODETBGES layout. Rows go straight to the writer, which
+// only holds the current row group; columns are dictionary encoded. The file is written
+// under a temporary name and moved into its partition on commit.
+@Component
+@ConditionalOnProperty(name = "maestro.export.parquet.dir")
+public class ParquetRowExportSink implements PrimaryRoleRowSink {
+
+    private static final Logger log = Logger.getLogger(ParquetRowExportSink.class.getName());
+
+    private static final String CODETBGES = "SGCIB";
+
+    private static final MessageType SCHEMA = Types.buildMessage()
+            .optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("CODAPP")
+            .optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("CODTRS")
+            .optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("NUMNTTIPL")
+            .optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("NUMIPL")
+            .required(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("CODETBGES")
+            .named("primaryrole");
+
+    private final Path exportDir;
+    private final CompressionCodecName codec;
+    private final long rowGroupBytes;
+
+    public ParquetRowExportSink(@Value("${maestro.export.parquet.dir}") String exportDir,
+                                @Value("${maestro.export.parquet.codec:SNAPPY}") String codec,
+                                @Value("${maestro.export.parquet.rowGroupBytes:67108864}") long rowGroupBytes) {
+        this.exportDir = Path.of(exportDir);
+        this.codec = CompressionCodecName.valueOf(codec);
+        this.rowGroupBytes = rowGroupBytes;
+    }
+
+    @Override
+    public Export open(String snapshotDate) throws IOException {
+        Path partition = exportDir.resolve("snapshotDate=" + snapshotDate);
+        Files.createDirectories(partition);
+        Path target = partition.resolve("primaryrole.parquet");
+        Path inProgress = partition.resolve(".primaryrole.parquet.inprogress");
+
+        ParquetWriter<Group> writer = ExampleParquetWriter.builder(new LocalOutputFile(inProgress))
+                .withType(SCHEMA)
+                .withDictionaryEncoding(true)
+                .withCompressionCodec(codec)
+                .withRowGroupSize(rowGroupBytes)
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .build();
+        return new ParquetExport(writer, inProgress, target);
+    }
+
+    private static final class ParquetExport implements Export {
+        private final SimpleGroupFactory groups = new SimpleGroupFactory(SCHEMA);
+        private final ParquetWriter<Group> writer;
+        private final Path inProgress;
+        private final Path target;
+        private long rows;
+        private boolean closed;
+        private boolean committed;
+
+        ParquetExport(ParquetWriter<Group> writer, Path inProgress, Path target) {
+            this.writer = writer;
+            this.inProgress = inProgress;
+            this.target = target;
+        }
+
+        @Override
+        public void row(String entityId, String code, String subbookingId) throws IOException {
+            Group group = groups.newGroup();
+            if (code != null) {
+                group.append("CODAPP", code);
+            }
+            if (entityId != null) {
+                group.append("CODTRS", "0" + entityId);
+                group.append("NUMNTTIPL", entityId);
+            }
+            if (subbookingId != null) {
+                group.append("NUMIPL", subbookingId);
+            }
+            group.append("CODETBGES", CODETBGES);
+            writer.write(group);
+            rows++;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            closed = true;
+            writer.close();
+            Files.move(inProgress, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            log.info("Exported " + rows + " rows to " + target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            // A commit that failed after closing the writer still leaves the file behind
+            try {
+                if (!closed) {
+                    closed = true;
+                    writer.close();
+                }
+            } finally {
+                Files.deleteIfExists(inProgress);
+            }
+        }
+    }
+}
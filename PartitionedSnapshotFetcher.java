@@ -0,0 +1,170 @@
+import io.opentelemetry.context.Context;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import com.socgen.riskweb.Model.ResponseInternal;
+
+// Pulls the snapshot as offset/limit pages over concurrent requests. Each page is
+// downloaded, inflated and parsed on its own worker; pages are merged back in offset order.
+@Component("partitionedSnapshotFetcher")
+public class PartitionedSnapshotFetcher {
+
+    private static final Logger log = Logger.getLogger(PartitionedSnapshotFetcher.class.getName());
+
+    @Value("${maestro.partition.size:50000}")
+    private int partitionSize;
+
+    @Value("${maestro.partition.parallelism:4}")
+    private int parallelism;
+
+    @Value("${maestro.partition.maxPartitions:10000}")
+    private int maxPartitions;
+
+    @Value("${maestro.partition.offsetParam:offset}")
+    private String offsetParam;
+
+    @Value("${maestro.partition.limitParam:limit}")
+    private String limitParam;
+
+    public interface PartitionLoader {
+        List<ResponseInternal> load(String partitionUrl) throws IOException;
+    }
+
+    private static class Partition {
+        private final int index;
+        private final List<ResponseInternal> responseObjects;
+        private final int entityCount;
+        private final String firstEntityId;
+
+        Partition(int index, List<ResponseInternal> responseObjects) {
+            this.index = index;
+            this.responseObjects = responseObjects;
+            int count = 0;
+            String first = null;
+            if (responseObjects != null) {
+                for (ResponseInternal wrapper : responseObjects) {
+                    if (wrapper.getInternalRegistrations() != null) {
+                        if (first == null && !wrapper.getInternalRegistrations().isEmpty()) {
+                            first = wrapper.getInternalRegistrations().get(0).getEntityId();
+                        }
+                        count += wrapper.getInternalRegistrations().size();
+                    }
+                }
+            }
+            this.entityCount = count;
+            this.firstEntityId = first;
+        }
+    }
+
+    public String partitionUrl(String baseUrl, int index) {
+        long offset = (long) index * partitionSize;
+        String separator = baseUrl.contains("?") ? "&" : "?";
+        return baseUrl + separator + offsetParam + "=" + offset + "&" + limitParam + "=" + partitionSize;
+    }
+
+    public int getPartitionSize() {
+        return partitionSize;
+    }
+
+    public List<ResponseInternal> fetchAll(String baseUrl, PartitionLoader loader) throws IOException {
+        long startTime = System.currentTimeMillis();
+        // Page spans join the caller's trace
+        ExecutorService executorService = Context.taskWrapping(Executors.newFixedThreadPool(Math.max(1, parallelism)));
+        CompletionService<Partition> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Integer, List<ResponseInternal>> partitions = new TreeMap<>();
+
+        int nextIndex = 0;
+        int inFlight = 0;
+        // Index of the first short page; nothing past it needs fetching
+        int lastIndex = Integer.MAX_VALUE;
+        // First entities of pages 0 and 1, to tell an endpoint that ignores the offset
+        String[] firstEntityIds = new String[2];
+
+        try {
+            while (inFlight < parallelism && nextIndex < maxPartitions) {
+                submit(completionService, baseUrl, loader, nextIndex++);
+                inFlight++;
+            }
+
+            while (inFlight > 0) {
+                Partition partition = completionService.take().get();
+                inFlight--;
+
+                log.info("Fetched partition " + partition.index + " with " + partition.entityCount + " entities");
+                checkPaged(partition, firstEntityIds);
+                if (partition.entityCount < partitionSize) {
+                    lastIndex = Math.min(lastIndex, partition.index);
+                }
+                if (partition.index <= lastIndex) {
+                    partitions.put(partition.index, partition.responseObjects);
+                }
+
+                if (nextIndex <= lastIndex && nextIndex < maxPartitions) {
+                    submit(completionService, baseUrl, loader, nextIndex++);
+                    inFlight++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching snapshot partitions", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            log.severe("Partition fetch failed: " + cause.getMessage());
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Partition fetch failed", cause);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        if (lastIndex == Integer.MAX_VALUE) {
+            // A truncated snapshot must never reach the table load
+            throw new IOException("Stopped after " + maxPartitions + " partitions without reaching the end of the snapshot");
+        }
+
+        // Merge in offset order so downstream sees the same sequence as a single request
+        List<ResponseInternal> merged = new ArrayList<>();
+        for (List<ResponseInternal> responseObjects : partitions.values()) {
+            if (responseObjects != null) {
+                merged.addAll(responseObjects);
+            }
+        }
+        log.info("Fetched " + partitions.size() + " partitions in " + (System.currentTimeMillis() - startTime) + " ms");
+        return merged;
+    }
+
+    // An endpoint that ignores offset/limit answers every page with the whole snapshot; without
+    // these checks it would be downloaded maxPartitions times before the fetch gives up
+    private void checkPaged(Partition partition, String[] firstEntityIds) throws IOException {
+        if (partition.entityCount > partitionSize) {
+            throw new IOException("Partition " + partition.index + " returned " + partition.entityCount
+                    + " entities for a limit of " + partitionSize + "; the endpoint ignores " + limitParam);
+        }
+        if (partition.index < 2) {
+            firstEntityIds[partition.index] = partition.firstEntityId;
+        }
+        if (firstEntityIds[0] != null && firstEntityIds[0].equals(firstEntityIds[1])) {
+            throw new IOException("Partitions 0 and 1 both start with entity " + firstEntityIds[0]
+                    + "; the endpoint ignores " + offsetParam);
+        }
+    }
+
+    private void submit(CompletionService<Partition> completionService, String baseUrl,
+                        PartitionLoader loader, int index) {
+        String url = partitionUrl(baseUrl, index);
+        completionService.submit(() -> new Partition(index, loader.load(url)));
+    }
+}
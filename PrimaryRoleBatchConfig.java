@@ -0,0 +1,195 @@
+import com.zaxxer.hikari.HikariDataSource;
+import io.opentelemetry.api.trace.Tracer;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.dao.DbeClientDaoImpl;
+import com.socgen.riskweb.dao.LoadGate;
+import com.socgen.riskweb.dao.LoaderDatabase;
+import com.socgen.riskweb.dao.WriteThrottle;
+
+// The primary role load as a Spring Batch job, launched with a snapshotDate job parameter:
+//   primaryRoleTruncateStep  empties WK_TSMAESTRO (skipped when a failed run is restarted)
+//   primaryRoleLoadStep      reads, pads/flattens and writes in chunks of maestro.batch.chunkSize,
+//                            split over maestro.batch.partitions paged workers when above 1,
+//                            at most maestro.batch.concurrency of them at once (by default one
+//                            fewer than the application pool they write through has connections)
+//   primaryRolePublishStep   rebuilds the lookup indexes from the committed table and
+//                            feeds the export sinks
+// Restarting a failed execution resumes each partition from its last committed chunk.
+// Workers write through the application DataSource and transaction manager, the job
+// repository's, so a chunk and its step execution commit together. The truncate and publish
+// tasklets call the DAO, which works on LoaderDatabase, and run in the loader's transactions.
+// An execution is the snapshotDate's load (LoadGate): it claims the date and WK_TSMAESTRO
+// before its first step and releases them after its last, so no other load writes in between.
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "maestro.batch.enabled", havingValue = "true")
+public class PrimaryRoleBatchConfig {
+
+    private static final String PARTITION_KEY = "partition";
+    private static final String STRIDE_KEY = "stride";
+
+    @Value("${maestro.batch.chunkSize:1000}")
+    private int chunkSize;
+
+    @Value("${maestro.batch.partitions:1}")
+    private int partitions;
+
+    // Each running worker holds a connection for its chunk; 0 leaves one of the application
+    // pool's connections for other requests and uses the rest
+    @Value("${maestro.batch.concurrency:0}")
+    private int concurrency;
+
+    @Bean
+    public Job primaryRoleLoadJob(JobRepository jobRepository, Step primaryRoleTruncateStep,
+                                  Step primaryRoleLoadStep, Step primaryRolePublishStep, LoadGate loadGate) {
+        return new JobBuilder("primaryRoleLoadJob", jobRepository)
+                .listener(loadGateListener(loadGate))
+                .start(primaryRoleTruncateStep)
+                .next(primaryRoleLoadStep)
+                .next(primaryRolePublishStep)
+                .build();
+    }
+
+    // A date already loading elsewhere fails the execution before its first step
+    private static JobExecutionListener loadGateListener(LoadGate loadGate) {
+        ConcurrentMap<Long, LoadGate.Claim> claims = new ConcurrentHashMap<>();
+        return new JobExecutionListener() {
+            @Override
+            public void beforeJob(JobExecution jobExecution) {
+                String snapshotDate = jobExecution.getJobParameters().getString("snapshotDate");
+                claims.put(jobExecution.getId(), loadGate.claimTable(snapshotDate));
+            }
+
+            @Override
+            public void afterJob(JobExecution jobExecution) {
+                LoadGate.Claim claim = claims.remove(jobExecution.getId());
+                if (claim != null) {
+                    claim.release(jobExecution.getStatus().toString());
+                }
+            }
+        };
+    }
+
+    @Bean
+    public Step primaryRoleTruncateStep(JobRepository jobRepository, LoaderDatabase loaderDatabase,
+                                        DbeClientDaoImpl clientDao) {
+        return new StepBuilder("primaryRoleTruncateStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    clientDao.resetForLoad((String) chunkContext.getStepContext().getJobParameters().get("snapshotDate"));
+                    return RepeatStatus.FINISHED;
+                }, loaderDatabase.getTransactionManager())
+                .build();
+    }
+
+    @Bean
+    public Step primaryRoleLoadStep(JobRepository jobRepository, Step primaryRoleWorkerStep, DataSource dataSource) {
+        return new StepBuilder("primaryRoleLoadStep", jobRepository)
+                .partitioner("primaryRoleWorkerStep", primaryRolePartitioner())
+                .step(primaryRoleWorkerStep)
+                .gridSize(Math.max(1, partitions))
+                .taskExecutor(partitionExecutor(dataSource))
+                .build();
+    }
+
+    // A thread per partition, but never more running than there are connections to write with
+    private SimpleAsyncTaskExecutor partitionExecutor(DataSource dataSource) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("maestro-batch-");
+        int poolSize = poolSize(dataSource);
+        int limit = concurrency > 0 ? concurrency : poolSize > 0 ? poolSize - 1 : partitions;
+        executor.setConcurrencyLimit(Math.max(1, Math.min(Math.max(1, partitions), limit)));
+        return executor;
+    }
+
+    // Connections of the pool behind the DataSource; 0 when it is not a Hikari pool
+    private static int poolSize(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            // Unknown then; maestro.batch.concurrency bounds the workers
+        }
+        return 0;
+    }
+
+    @Bean
+    public Step primaryRoleWorkerStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                      MaestroRegistrationsReader primaryRoleReader, DataSource dataSource,
+                                      WriteThrottle writeThrottle, Tracer tracer) {
+        return new StepBuilder("primaryRoleWorkerStep", jobRepository)
+                .<InternalRegistrations, List<Object[]>>chunk(chunkSize, transactionManager)
+                .reader(primaryRoleReader)
+                .processor(new PrimaryRoleItemProcessor())
+                .writer(new PrimaryRoleRowWriter(dataSource, writeThrottle, tracer))
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public MaestroRegistrationsReader primaryRoleReader(RestClientUtility restClientUtility,
+                                                        MaestroTransport maestroTransport,
+                                                        MaestroResilience maestroResilience,
+                                                        PartitionedSnapshotFetcher partitionedSnapshotFetcher,
+                                                        ObeclientProperties dbeclientProperties,
+                                                        @Value("#{jobParameters['snapshotDate']}") String snapshotDate,
+                                                        @Value("#{stepExecutionContext['partition']}") Integer partition,
+                                                        @Value("#{stepExecutionContext['stride']}") Integer stride) {
+        String url = dbeclientProperties.getMaestrorelationshipApiUrl()
+                + SnapshotDates.queryFor(LocalDate.parse(snapshotDate));
+        return new MaestroRegistrationsReader(restClientUtility, maestroTransport, maestroResilience,
+                partitionedSnapshotFetcher, url, partition, stride);
+    }
+
+    @Bean
+    public Step primaryRolePublishStep(JobRepository jobRepository, LoaderDatabase loaderDatabase,
+                                       DbeClientDaoImpl clientDao) {
+        return new StepBuilder("primaryRolePublishStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    // Entities indexed show up as the step's write count
+                    contribution.incrementWriteCount(clientDao.publishFromTable(
+                            (String) chunkContext.getStepContext().getJobParameters().get("snapshotDate")));
+                    return RepeatStatus.FINISHED;
+                }, loaderDatabase.getTransactionManager())
+                .build();
+    }
+
+    // Partition k reads pages k, k + n, k + 2n, ... of the snapshot; a single partition reads it unpaged
+    private Partitioner primaryRolePartitioner() {
+        return gridSize -> {
+            Map<String, ExecutionContext> contexts = new HashMap<>();
+            for (int partition = 0; partition < gridSize; partition++) {
+                ExecutionContext context = new ExecutionContext();
+                context.putInt(PARTITION_KEY, partition);
+                context.putInt(STRIDE_KEY, gridSize > 1 ? gridSize : 0);
+                contexts.put("partition" + partition, context);
+            }
+            return contexts;
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package com.socgen.riskweb.dao;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.Model.Registration;
+import com.socgen.riskweb.Model.SubBookingEntity;
+
+import java.util.List;
+
+// Expands an entity into its WK_TSMAESTRO rows: {entityId, code, subbookingId}
+public final class PrimaryRoleFlattener {
+
+    private PrimaryRoleFlattener() {
+    }
+
+    // Number of rows flatten() would add, without allocating them
+    public static int rowCount(InternalRegistrations internalReg) {
+        int rows = 0;
+        List<Registration> registrations = internalReg.getRegistrations();
+        if (registrations != null) {
+            for (Registration reg : registrations) {
+                List<SubBookingEntity> subBookingEntities = reg.getSubBookingEntities();
+                rows += subBookingEntities == null || subBookingEntities.isEmpty() ? 1 : subBookingEntities.size();
+            }
+        }
+        return rows;
+    }
+
+    public static int flatten(InternalRegistrations internalReg, List<Object[]> rows) {
+        int added = 0;
+        String entityId = internalReg.getEntityId();
+        List<Registration> registrations = internalReg.getRegistrations();
+
+        if (registrations != null) {
+            for (Registration reg : registrations) {
+                String code = reg.getCode();
+                List<SubBookingEntity> subBookingEntities = reg.getSubBookingEntities();
+
+                // If subBookingEntities is null or empty, insert a record with null subbookingId
+                if (subBookingEntities == null || subBookingEntities.isEmpty()) {
+                    rows.add(new Object[]{entityId, code, null});
+                    added++;
+                } else {
+                    // Insert a record for each subbookingId
+                    for (SubBookingEntity subBooking : subBookingEntities) {
+                        rows.add(new Object[]{entityId, code, subBooking.getSubbookingId()});
+                        added++;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+}
@@ -0,0 +1,25 @@
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.dao.PrimaryRoleFlattener;
+
+// Pads the BDRID and expands the entity into its WK_TSMAESTRO rows; an entity without
+// registrations produces no rows and is filtered out of the chunk
+public class PrimaryRoleItemProcessor implements ItemProcessor<InternalRegistrations, List<Object[]>> {
+
+    @Override
+    public List<Object[]> process(InternalRegistrations internalRegistrations) {
+        String bdrid = internalRegistrations.getEntityId();
+        if (bdrid != null && bdrid.length() < 10) {
+            // Pad with leading zeros to make it 10 digits
+            internalRegistrations.setEntityId(String.format("%010d", Long.parseLong(bdrid)));
+        }
+
+        List<Object[]> rows = new ArrayList<>(PrimaryRoleFlattener.rowCount(internalRegistrations));
+        PrimaryRoleFlattener.flatten(internalRegistrations, rows);
+        return rows.isEmpty() ? null : rows;
+    }
+}
@@ -0,0 +1,192 @@
+package com.socgen.riskweb.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Inverted indexes over one loaded snapshot: subbookingId -> entities and code -> entities.
+// Postings are sorted int arrays of entity ordinals (position in the snapshot), resolved
+// to BDRIDs only when a query returns.
+public final class PrimaryRoleReverseIndex {
+
+    public static final PrimaryRoleReverseIndex EMPTY = new Builder().build();
+
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final Map<String, int[]> bySubbookingId;
+    private final Map<String, int[]> byCode;
+    private final String[] entityIds;
+
+    private PrimaryRoleReverseIndex(Map<String, int[]> bySubbookingId, Map<String, int[]> byCode, String[] entityIds) {
+        this.bySubbookingId = bySubbookingId;
+        this.byCode = byCode;
+        this.entityIds = entityIds;
+    }
+
+    // Which BDRIDs book through subbooking X
+    public List<String> entitiesBookingThrough(String subbookingId) {
+        return resolve(bySubbookingId.getOrDefault(subbookingId, NO_POSTINGS));
+    }
+
+    // All entities with a registration of the given code, e.g. LOA
+    public List<String> entitiesWithCode(String code) {
+        return resolve(byCode.getOrDefault(code, NO_POSTINGS));
+    }
+
+    public List<String> entitiesWithCodeBookingThrough(String code, String subbookingId) {
+        return resolve(intersect(byCode.getOrDefault(code, NO_POSTINGS),
+                bySubbookingId.getOrDefault(subbookingId, NO_POSTINGS)));
+    }
+
+    public int countWithCode(String code) {
+        return byCode.getOrDefault(code, NO_POSTINGS).length;
+    }
+
+    public int countBookingThrough(String subbookingId) {
+        return bySubbookingId.getOrDefault(subbookingId, NO_POSTINGS).length;
+    }
+
+    private List<String> resolve(int[] postings) {
+        if (postings.length == 0) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(postings.length);
+        for (int ordinal : postings) {
+            result.add(entityIds[ordinal]);
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] result = new int[Math.min(left.length, right.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[n++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // Growable int list; skips an ordinal equal to the last one so an entity is posted once per key
+    private static final class IntPostings {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int ordinal) {
+            if (size > 0 && values[size - 1] == ordinal) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = ordinal;
+        }
+
+        void addAll(IntPostings other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        int[] toSortedArray() {
+            int[] sorted = Arrays.copyOf(values, size);
+            // Batches are merged in completion order, not ordinal order
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    // One builder per batch while flattening, merged into the load-wide builder afterwards.
+    // A batch's builder starts at the batch's first ordinal and only holds the entities from
+    // there on, so neither it nor the merge depends on the size of the whole snapshot.
+    // add() is not thread-safe; merge() is.
+    public static final class Builder {
+        private final Map<String, IntPostings> bySubbookingId = new HashMap<>();
+        private final Map<String, IntPostings> byCode = new HashMap<>();
+        private final int baseOrdinal;
+        private String[] entityIds = new String[16];
+        // Entities from baseOrdinal on
+        private int entityCount;
+
+        public Builder() {
+            this(0);
+        }
+
+        public Builder(int baseOrdinal) {
+            this.baseOrdinal = baseOrdinal;
+        }
+
+        public void recordEntity(int ordinal, String entityId) {
+            int slot = ordinal - baseOrdinal;
+            if (slot < 0) {
+                throw new IllegalArgumentException("Ordinal " + ordinal + " below the builder's base " + baseOrdinal);
+            }
+            ensureEntityCapacity(slot + 1);
+            entityIds[slot] = entityId;
+            entityCount = Math.max(entityCount, slot + 1);
+        }
+
+        // row is a flattened {entityId, code, subbookingId} from PrimaryRoleFlattener
+        public void add(int ordinal, Object[] row) {
+            String code = (String) row[1];
+            String subbookingId = (String) row[2];
+            if (code != null) {
+                byCode.computeIfAbsent(code, key -> new IntPostings()).add(ordinal);
+            }
+            if (subbookingId != null) {
+                bySubbookingId.computeIfAbsent(subbookingId, key -> new IntPostings()).add(ordinal);
+            }
+        }
+
+        // Copies the partial's slice [baseOrdinal, baseOrdinal + entityCount) into place
+        public synchronized void merge(Builder partial) {
+            mergePostings(partial.bySubbookingId, bySubbookingId);
+            mergePostings(partial.byCode, byCode);
+            int from = partial.baseOrdinal - baseOrdinal;
+            if (from < 0) {
+                throw new IllegalArgumentException("Partial builder starts at " + partial.baseOrdinal
+                        + ", below this builder's base " + baseOrdinal);
+            }
+            ensureEntityCapacity(from + partial.entityCount);
+            System.arraycopy(partial.entityIds, 0, entityIds, from, partial.entityCount);
+            entityCount = Math.max(entityCount, from + partial.entityCount);
+        }
+
+        public synchronized PrimaryRoleReverseIndex build() {
+            return new PrimaryRoleReverseIndex(freeze(bySubbookingId), freeze(byCode),
+                    Arrays.copyOf(entityIds, entityCount));
+        }
+
+        private void ensureEntityCapacity(int capacity) {
+            if (capacity > entityIds.length) {
+                entityIds = Arrays.copyOf(entityIds, Math.max(capacity, entityIds.length * 2));
+            }
+        }
+
+        private static void mergePostings(Map<String, IntPostings> from, Map<String, IntPostings> into) {
+            for (Map.Entry<String, IntPostings> entry : from.entrySet()) {
+                into.computeIfAbsent(entry.getKey(), key -> new IntPostings()).addAll(entry.getValue());
+            }
+        }
+
+        private static Map<String, int[]> freeze(Map<String, IntPostings> postings) {
+            Map<String, int[]> frozen = new HashMap<>(postings.size() * 2);
+            for (Map.Entry<String, IntPostings> entry : postings.entrySet()) {
+                frozen.put(entry.getKey(), entry.getValue().toSortedArray());
+            }
+            return frozen;
+        }
+    }
+}
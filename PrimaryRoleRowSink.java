@@ -0,0 +1,18 @@
+package com.socgen.riskweb.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Receives a snapshot's WK_TSMAESTRO rows once the load has committed, one row at a time
+// in key order. Sinks are picked up from the context by DbeClientDaoImpl.
+public interface PrimaryRoleRowSink {
+
+    Export open(String snapshotDate) throws IOException;
+
+    // Closing an export that was not committed discards what it wrote
+    interface Export extends Closeable {
+        void row(String entityId, String code, String subbookingId) throws IOException;
+
+        void commit() throws IOException;
+    }
+}
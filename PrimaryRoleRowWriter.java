@@ -0,0 +1,72 @@
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.socgen.riskweb.dao.DbeClientDaoImpl;
+import com.socgen.riskweb.dao.WriteThrottle;
+
+// Writes a chunk of flattened entities as one JDBC batch, in index key order like the DAO,
+// through the same write throttle and with the same maestro.executeBatch span
+public class PrimaryRoleRowWriter implements ItemWriter<List<Object[]>> {
+
+    private final JdbcBatchItemWriter<Object[]> delegate;
+    private final WriteThrottle writeThrottle;
+    private final Tracer tracer;
+
+    public PrimaryRoleRowWriter(DataSource dataSource, WriteThrottle writeThrottle, Tracer tracer) {
+        this.writeThrottle = writeThrottle;
+        this.tracer = tracer;
+        this.delegate = new JdbcBatchItemWriterBuilder<Object[]>()
+                .dataSource(dataSource)
+                .sql(DbeClientDaoImpl.AppQueries.QRY_SAVE_PRIMARYROLE.value())
+                .itemPreparedStatementSetter((params, ps) -> {
+                    ps.setString(1, (String) params[0]); // entityId
+                    ps.setString(2, (String) params[1]); // code
+                    if (params[2] == null) {
+                        ps.setNull(3, java.sql.Types.VARCHAR); // subbookingId
+                    } else {
+                        ps.setString(3, (String) params[2]); // subbookingId
+                    }
+                })
+                // Drivers may report SUCCESS_NO_INFO for batched inserts
+                .assertUpdates(false)
+                .build();
+    }
+
+    @Override
+    public void write(Chunk<? extends List<Object[]>> chunk) throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        for (List<Object[]> entityRows : chunk) {
+            rows.addAll(entityRows);
+        }
+        rows.sort(DbeClientDaoImpl.ROW_KEY_ORDER);
+
+        long throttleStart = System.nanoTime();
+        writeThrottle.acquire(rows.size());
+        long start = System.nanoTime();
+        Span span = tracer.spanBuilder("maestro.executeBatch")
+                .setAttribute("maestro.entities", chunk.size())
+                .setAttribute("maestro.rows", rows.size())
+                .setAttribute("maestro.throttle.waitMs", (start - throttleStart) / 1_000_000)
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            delegate.write(new Chunk<>(rows));
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, String.valueOf(e.getMessage()));
+            throw e;
+        } finally {
+            writeThrottle.release(System.nanoTime() - start);
+            span.end();
+        }
+    }
+}
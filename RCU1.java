@@ -2,22 +2,29 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
-import java.util.zip.DataFormatException;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.Inflater;
-import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -48,287 +55,636 @@ public class RestClientUtility {
     @Autowired
     private ApplicationConfig applicationConfig;
 
-    private String decompressData(byte[] compressedBytes) {
-        // First, try GZIP decompression
-        try {
-            ByteArrayInputStream bis = new ByteArrayInputStream(compressedBytes);
-            GZIPInputStream gis = new GZIPInputStream(bis);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-            byte[] buffer = new byte[1098];
-            int len;
-            while ((len = gis.read(buffer)) != -1) {
-                bos.write(buffer, 0, len);
-            }
+    @Autowired
+    private SnapshotSpillDownloader snapshotSpillDownloader;
 
-            gis.close();
-            bos.close();
+    // Stream the snapshot through temp files instead of holding it on heap;
+    // interrupted transfers resume with Range requests when the server allows it
+    @Value("${maestro.spill.enabled:false}")
+    private boolean spillToDisk;
 
-            return new String(bos.toByteArray(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            log.warning("GZIP decompression failed, trying Inflater: " + e.getMessage());
-            System.out.println("GZIP decompression failed, trying Inflater: " + e.getMessage());
+    @Value("${maestro.spill.keepFiles:false}")
+    private boolean keepSpillFiles;
 
-            // If GZIP fails, try Inflater
-            try {
-                Inflater inflater = new Inflater(true); // true for ZLIB header
-                inflater.setInput(compressedBytes);
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream(compressedBytes.length);
-                byte[] buffer = new byte[9098];
-
-                while (!inflater.finished()) {
-                    int count = inflater.inflate(buffer);
-                    outputStream.write(buffer, 0, count);
-                }
+    @Autowired
+    private PartitionedSnapshotFetcher partitionedSnapshotFetcher;
+
+    @Autowired
+    private MaestroResilience maestroResilience;
+
+    // Fetch the snapshot as concurrent offset/limit pages
+    @Value("${maestro.partition.enabled:false}")
+    private boolean partitionedFetch;
+
+    @Autowired
+    private MaestroTransport maestroTransport;
 
-                outputStream.close();
+    // Parse the decoded document on all cores; needs the whole document in memory or mapped
+    @Value("${maestro.parse.parallel.enabled:false}")
+    private boolean parallelParse;
+
+    @Autowired
+    private ParallelSnapshotParser parallelSnapshotParser;
+
+    @Autowired
+    private StartupTimings startupTimings;
+
+    @Autowired
+    private Tracer tracer;
+
+    @Autowired
+    private SnapshotDates snapshotDates;
+
+    // When set, each processed snapshot is also written there in the compact binary format
+    // (SnapshotBinaryWriter) for downstream consumers
+    @Value("${maestro.snapshot.binaryDir:}")
+    private String binarySnapshotDir;
+
+    // Host header for when Maestro is reached through an address other than its own name.
+    // Empty sends none; every transport then derives it from the URL
+    @Value("${maestro.api.hostHeader:}")
+    private String maestroHostHeader;
+
+    // Wraps the raw body in the matching decoder. The first bytes are sniffed instead of
+    // trying GZIP and falling back, so the body is never held in memory: GZIP magic,
+    // plain JSON, otherwise raw deflate
+    static InputStream openDecodedStream(InputStream body) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(body, 64 * 1024);
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(in, 64 * 1024);
+        }
+        if (first == -1 || first == '[' || first == '{' || Character.isWhitespace(first)) {
+            return in;
+        }
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(in, inflater, 64 * 1024) {
+            @Override
+            public void close() throws IOException {
+                super.close();
                 inflater.end();
+            }
+        };
+    }
 
-                return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
-            } catch (DataFormatException | IOException ex) {
-                log.severe("Error decompressing content with Inflater: " + ex.getMessage());
-                System.err.println("Error decompressing content with Inflater: " + ex.getMessage());
-                ex.printStackTrace();
-                
-                // If both decompression methods fail, return the original data as a string
-                System.out.println("Both decompression methods failed. Returning original data as string.");
-                log.severe("Both decompression methods failed. Returning original data as string.");
-                return new String(compressedBytes, StandardCharsets.UTF_8);
+    public ResponseInternal sendPrimaryroleApi() throws IOException {
+        return sendPrimaryroleApi(snapshotDates.current());
+    }
+
+    // The root span of the fetch; token, HTTP, decompress and parse spans hang below it
+    public ResponseInternal sendPrimaryroleApi(LocalDate snapshotDate) throws IOException {
+        Span span = tracer.spanBuilder("maestro.primaryrole.fetch")
+                .setAttribute("maestro.snapshotDate", snapshotDate.toString()).startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            ResponseInternal response = fetchPrimaryroleApi(snapshotDate);
+            if (response == null) {
+                span.setStatus(StatusCode.ERROR, "No snapshot received");
+                return null;
+            }
+            if (response.getInternalRegistrations() != null) {
+                span.setAttribute("maestro.entities", response.getInternalRegistrations().size());
             }
+            exportBinarySnapshot(response, snapshotDate);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            recordFailure(span, e);
+            throw e;
+        } finally {
+            span.end();
         }
     }
 
-    public ResponseInternal sendPrimaryroleApi() throws IOException {
+    private ResponseInternal fetchPrimaryroleApi(LocalDate snapshotDate) throws IOException {
         System.out.println("Starting sendPrimaryroleApi method");
         
         String scope = "api.get-third-parties.v1";
         String ClientId = dbeclientProperties.getMaestroClientId();
         String SecretId = dbeclientProperties.getMaestroSecretId();
 
-        String access_token = generateSGconnectToken(scope, ClientId, SecretId);
+        String access_token;
+        Span tokenSpan = tracer.spanBuilder("maestro.token").startSpan();
+        try (Scope ignored = tokenSpan.makeCurrent()) {
+            access_token = generateSGconnectToken(scope, ClientId, SecretId);
+        } catch (Exception e) {
+            recordFailure(tokenSpan, e);
+            throw e;
+        } finally {
+            tokenSpan.end();
+        }
         ResponseInternal responseObject = null;
 
-        // static date
-        String maestrodate = "?snapshotDate=2025-02-15";
-        // LocalDate today = LocalDate.now();
-        // String formattedDate = today.toString();
-        // String maestrodate = "?snapshotDate=" + formattedDate;
+        String maestrodate = SnapshotDates.queryFor(snapshotDate);
 
         RestTemplate restTemplate = new RestTemplate();
+        HttpHeaders headers = primaryroleHeaders(access_token);
+
+        String url = this.dbeclientProperties.getMaestrorelationshipApiUrl() + maestrodate;
+        System.out.println("Sending API request to: " + url);
+        startupTimings.markFirstRequest();
+
+        if (partitionedFetch) {
+            return sendPrimaryroleApiPartitioned(url, headers);
+        }
+
+        if (spillToDisk) {
+            return sendPrimaryroleApiSpilled(restTemplate, url, headers);
+        }
+        
+        ObjectMapper mapperObj = createMapper();
+        List<ResponseInternal> responseObjects;
+        Span httpSpan = tracer.spanBuilder("maestro.http").setAttribute("url.full", url).startSpan();
+        try (Scope ignored = httpSpan.makeCurrent()) {
+            // The body is read and parsed inside the call: the http2 engine hands it over as it
+            // arrives, and a failure halfway through must be retried and counted like any other.
+            // Never hedged, a second request would download and parse the whole snapshot again
+            responseObjects = maestroResilience.call("sendPrimaryroleApi",
+                    () -> receiveSnapshot(url, headers, mapperObj, httpSpan), false);
+        } catch (JsonProcessingException e) {
+            recordFailure(httpSpan, e);
+            System.err.println("Error parsing JSON: " + e.getMessage());
+            log.severe("Error parsing JSON: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        } catch (Exception e) {
+            recordFailure(httpSpan, e);
+            return handleCallFailure(e);
+        } finally {
+            httpSpan.end();
+        }
+
+        if (responseObjects == null) {
+            return null;
+        }
+
+        ResponseInternal transformedData = processResponseObjects(responseObjects);
+
+        String transformedJson = mapperObj.writeValueAsString(transformedData);
+        responseObject = mapperObj.readValue(transformedJson, ResponseInternal.class);
+
+        System.out.println("Completed sendPrimaryroleApi method");
+        return responseObject;
+    }
+
+    // One attempt: the exchange, decoding and parse of the whole body. Null when Maestro
+    // answered without a snapshot to load.
+    private List<ResponseInternal> receiveSnapshot(String url, HttpHeaders headers, ObjectMapper mapperObj,
+                                                   Span httpSpan) throws IOException {
+        MaestroTransport.Response result = maestroTransport.send(url, headers);
+        if (result == null) {
+            log.severe("API call result is null");
+            System.err.println("API call result is null");
+            return null;
+        }
+
+        try (MaestroTransport.Response response = result) {
+            int status = response.getStatus();
+            httpSpan.setAttribute("http.response.status_code", status);
+            if (isErrorStatus(status)) {
+                return null;
+            }
+            if (status != 200) {
+                System.err.println("Unexpected status code: " + status);
+                log.severe("Unexpected status code: " + status);
+                return null;
+            }
+
+            System.out.println("Successfully Data received from Maestro");
+            log.info("**Successfully Data received from Maestro API for Primary Role**");
+            System.out.println("Response content length: " + response.getHeaders().getContentLength());
+
+            List<ResponseInternal> responseObjects;
+            // Parsed straight off the (decoded) wire stream; ACCEPT_SINGLE_VALUE_AS_ARRAY
+            // covers a body that is a single object, the stream cannot be read twice
+            // Streaming parses decode as they read, so there the parse span includes decompression
+            // Bytes as they came off the wire; Content-Length is absent for chunked responses
+            CountingInputStream wire = new CountingInputStream(response.getBody());
+            try (InputStream json = openDecodedStream(wire)) {
+                ByteBuffer decoded = parallelParse ? decompress(json, httpSpan) : null;
+                Span parseSpan = tracer.spanBuilder("maestro.parse")
+                        .setParent(Context.current().with(httpSpan))
+                        .setAttribute("maestro.parse.parallel", parallelParse).startSpan();
+                try (Scope ignored = parseSpan.makeCurrent()) {
+                    responseObjects = parallelParse
+                            ? parallelSnapshotParser.parse(decoded, mapperObj)
+                            : mapperObj.readValue(json, new TypeReference<List<ResponseInternal>>() {});
+                    parseSpan.setAttribute("maestro.wrappers", responseObjects != null ? responseObjects.size() : 0);
+                } catch (IOException | RuntimeException e) {
+                    recordFailure(parseSpan, e);
+                    throw e;
+                } finally {
+                    parseSpan.end();
+                }
+            } finally {
+                httpSpan.setAttribute("http.response.body.size", wire.getCount());
+            }
+            System.out.println("Parsed response as List<ResponseInternal>, size: " +
+                              (responseObjects != null ? responseObjects.size() : "null"));
+            return responseObjects;
+        }
+    }
+
+    public HttpHeaders primaryroleHeaders(String accessToken) {
         HttpHeaders headers = new HttpHeaders();
 
-        headers.set("Authorization", "Bearer " + access_token);
+        headers.set("Authorization", "Bearer " + accessToken);
         headers.set("content-Language", "en-US");
-        headers.set("Host", "maestro-search-uat.fr.world.socgen");
+        if (!maestroHostHeader.isEmpty()) {
+            headers.set("Host", maestroHostHeader);
+        }
         headers.set("Accept", "*/*");
         headers.set("content-type", "application/json");
         headers.set("accept", "application/json");
         headers.set("Accept-Encoding", "gzip, deflate");
+        return headers;
+    }
 
-        HttpEntity<String> entity = new HttpEntity<>("", headers);
+    public String generatePrimaryroleToken() throws IOException {
+        return generateSGconnectToken("api.get-third-parties.v1",
+                dbeclientProperties.getMaestroClientId(), dbeclientProperties.getMaestroSecretId());
+    }
 
-        System.out.println("Sending API request to: " + this.dbeclientProperties.getMaestrorelationshipApiUrl() + maestrodate);
-        
-        ResponseEntity<byte[]> result = null;
+    private ResponseInternal sendPrimaryroleApiPartitioned(String url, HttpHeaders headers) {
+        ObjectMapper mapperObj = createMapper();
+        List<ResponseInternal> responseObjects;
         try {
-            result = restTemplate.exchange(
-                    this.dbeclientProperties.getMaestrorelationshipApiUrl() + maestrodate,
-                    HttpMethod.GET,
-                    entity,
-                    byte[].class
-            );
+            responseObjects = partitionedSnapshotFetcher.fetchAll(url,
+                    partitionUrl -> maestroResilience.call("sendPrimaryroleApi partition",
+                            () -> loadPartition(partitionUrl, headers, mapperObj)));
         } catch (Exception e) {
-            log.severe("Exception while calling API: " + e.getMessage());
-            System.err.println("Exception while calling API: " + e.getMessage());
-            e.printStackTrace();
-            return null;
+            return handleCallFailure(e);
         }
 
-        if (result == null) {
+        System.out.println("Successfully Data received from Maestro");
+        log.info("**Successfully Data received from Maestro API for Primary Role**");
+
+        ResponseInternal transformedData = processResponseObjects(responseObjects);
+        System.out.println("Completed sendPrimaryroleApi method");
+        return transformedData;
+    }
+
+    // Runs on a fetcher worker thread: download, inflate and parse a single page.
+    // With the http2 transport all pages share the client's connection
+    private List<ResponseInternal> loadPartition(String partitionUrl, HttpHeaders headers,
+                                                 ObjectMapper mapperObj) throws IOException {
+        // One span per page covers its exchange, decompression and parse, which overlap
+        Span span = tracer.spanBuilder("maestro.partition").setAttribute("url.full", partitionUrl).startSpan();
+        try (Scope ignored = span.makeCurrent();
+             MaestroTransport.Response response = maestroTransport.send(partitionUrl, headers)) {
+            int status = response.getStatus();
+            span.setAttribute("http.response.status_code", status);
+            // Runs once per attempt; the failure is notified once, after the retries
+            if (status != 200) {
+                throw new MaestroResilience.StatusException(status, "API returned status code: " + status + " for " + partitionUrl);
+            }
+
+            CountingInputStream wire = new CountingInputStream(response.getBody());
+            try (InputStream json = openDecodedStream(wire)) {
+                if (json.markSupported()) {
+                    json.mark(1);
+                    if (json.read() == -1) {
+                        return new ArrayList<>();
+                    }
+                    json.reset();
+                }
+                List<ResponseInternal> page = mapperObj.readValue(json, new TypeReference<List<ResponseInternal>>() {});
+                span.setAttribute("maestro.wrappers", page != null ? page.size() : 0);
+                return page;
+            } finally {
+                span.setAttribute("http.response.body.size", wire.getCount());
+            }
+        } catch (IOException | RuntimeException e) {
+            recordFailure(span, e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    private ResponseInternal sendPrimaryroleApiSpilled(RestTemplate restTemplate, String url, HttpHeaders headers) throws IOException {
+        String tag = "maestro-primaryrole-" + System.currentTimeMillis();
+
+        SnapshotSpillDownloader.SpillResult spill;
+        Span httpSpan = tracer.spanBuilder("maestro.http").setAttribute("url.full", url).startSpan();
+        try (Scope ignored = httpSpan.makeCurrent()) {
+            // Not hedged: both requests would write the same spill file. The resilience retries
+            // are the only ones; each resumes the same transfer where the previous one stopped
+            SnapshotSpillDownloader.Transfer transfer = new SnapshotSpillDownloader.Transfer(tag);
+            spill = maestroResilience.call("sendPrimaryroleApi",
+                    () -> snapshotSpillDownloader.download(restTemplate, url, headers, transfer), false);
+            if (spill != null) {
+                httpSpan.setAttribute("http.response.status_code", spill.getStatus());
+                httpSpan.setAttribute("http.response.body.size", spill.getBytesWritten());
+            }
+        } catch (Exception e) {
+            recordFailure(httpSpan, e);
+            return handleCallFailure(e);
+        } finally {
+            httpSpan.end();
+        }
+
+        if (spill == null) {
             log.severe("API call result is null");
             System.err.println("API call result is null");
             return null;
         }
 
-        int status = result.getStatusCode().value();
+        int status = spill.getStatus();
+        if (isErrorStatus(status)) {
+            return null;
+        }
+        if (status != 200) {
+            System.err.println("Unexpected status code: " + status);
+            log.severe("Unexpected status code: " + status);
+            return null;
+        }
+
+        System.out.println("Successfully Data received from Maestro");
+        log.info("**Successfully Data received from Maestro API for Primary Role**");
+        System.out.println("Response body length: " + spill.getBytesWritten());
+
+        if (spill.getBytesWritten() == 0) {
+            log.severe("Response body is empty");
+            System.err.println("Response body is empty");
+            return null;
+        }
+
+        return replayPrimaryroleSnapshot(spill.getRawFile());
+    }
+
+    // Parses a spilled raw body; also used to replay the file a crashed run left behind
+    public ResponseInternal replayPrimaryroleSnapshot(Path rawFile) throws IOException {
+        Path jsonFile;
+        Span decompressSpan = tracer.spanBuilder("maestro.decompress").startSpan();
+        try (Scope ignored = decompressSpan.makeCurrent()) {
+            jsonFile = snapshotSpillDownloader.decompressToFile(rawFile);
+            decompressSpan.setAttribute("maestro.bytes.decoded", Files.size(jsonFile));
+        } catch (IOException | RuntimeException e) {
+            recordFailure(decompressSpan, e);
+            throw e;
+        } finally {
+            decompressSpan.end();
+        }
+        System.out.println("Decompressed JSON written to: " + jsonFile);
+
+        Span parseSpan = tracer.spanBuilder("maestro.parse").setAttribute("maestro.parse.parallel", parallelParse).startSpan();
+        try (Scope ignored = parseSpan.makeCurrent()) {
+            return parseReplayedSnapshot(rawFile, jsonFile);
+        } catch (IOException | RuntimeException e) {
+            recordFailure(parseSpan, e);
+            throw e;
+        } finally {
+            parseSpan.end();
+        }
+    }
+
+    private ResponseInternal parseReplayedSnapshot(Path rawFile, Path jsonFile) throws IOException {
+        ObjectMapper mapperObj = createMapper();
+        List<ResponseInternal> responseObjects;
+        ByteBuffer mappedJson = parallelParse ? snapshotSpillDownloader.mapWhole(jsonFile) : null;
+        if (mappedJson != null) {
+            try {
+                responseObjects = parallelSnapshotParser.parse(mappedJson, mapperObj);
+            } catch (IOException e) {
+                System.err.println("Error parsing JSON: " + e.getMessage());
+                log.severe("Error parsing JSON, spill files kept at " + rawFile + ": " + e.getMessage());
+                return null;
+            }
+        } else {
+            try (InputStream in = snapshotSpillDownloader.openMapped(jsonFile)) {
+                responseObjects = mapperObj.readValue(in, new TypeReference<List<ResponseInternal>>() {});
+                System.out.println("Parsed response as List<ResponseInternal>, size: " +
+                                  (responseObjects != null ? responseObjects.size() : "null"));
+            } catch (JsonProcessingException e) {
+                log.warning("Failed to parse as list, trying as single object: " + e.getMessage());
+                System.out.println("Failed to parse as list, trying as single object: " + e.getMessage());
+                try (InputStream in = snapshotSpillDownloader.openMapped(jsonFile)) {
+                    responseObjects = new ArrayList<>();
+                    responseObjects.add(mapperObj.readValue(in, ResponseInternal.class));
+                } catch (JsonProcessingException e2) {
+                    // Keep the spill files so the snapshot can be replayed
+                    System.err.println("Error parsing JSON: " + e2.getMessage());
+                    log.severe("Error parsing JSON, spill files kept at " + rawFile + ": " + e2.getMessage());
+                    return null;
+                }
+            }
+        }
+
+        // No JSON round trip here, the whole document would end up on heap again
+        ResponseInternal transformedData = processResponseObjects(responseObjects);
+
+        if (!keepSpillFiles) {
+            snapshotSpillDownloader.cleanup(rawFile.equals(jsonFile) ? null : jsonFile, rawFile);
+        }
+        System.out.println("Completed sendPrimaryroleApi method");
+        return transformedData;
+    }
+
+    private ByteBuffer decompress(InputStream json, Span parent) throws IOException {
+        Span span = tracer.spanBuilder("maestro.decompress").setParent(Context.current().with(parent)).startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            byte[] decoded = json.readAllBytes();
+            span.setAttribute("maestro.bytes.decoded", decoded.length);
+            return ByteBuffer.wrap(decoded);
+        } catch (IOException | RuntimeException e) {
+            recordFailure(span, e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    // Counts the bytes read through it, for the http.response.body.size span attribute
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        // Marks would make the count depend on how often the reader rewinds
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    private static void recordFailure(Span span, Throwable e) {
+        span.recordException(e);
+        span.setStatus(StatusCode.ERROR, String.valueOf(e.getMessage()));
+    }
+
+    private ResponseInternal handleCallFailure(Exception e) {
+        if (e instanceof MaestroResilience.CircuitOpenException) {
+            // The failure that opened the circuit was already notified; fail fast without another mail
+            log.warning(e.getMessage());
+            System.err.println(e.getMessage());
+            return null;
+        }
+        log.severe("Exception while calling API: " + e.getMessage());
+        System.err.println("Exception while calling API: " + e.getMessage());
+        e.printStackTrace();
+        sendMaestroDataService.sendErrorNotification("API Error", "Maestro call failed after retries: " + e.getMessage());
+        return null;
+    }
+
+    private boolean isErrorStatus(int status) {
+        // 201 and other 2xx answers are not failures of the call; they are logged where they are handled
         if (status == NULL || status == 401 || status == 402 || status == 403
-                || status == 404 || status == 500 || status == 201 || status == 501) {
+                || status == 404 || status == 500 || status == 501) {
             String errorMessage = "API returned status code: " + status;
             System.err.println(errorMessage);
             log.severe(errorMessage);
             sendMaestroDataService.sendErrorNotification("API Error", errorMessage);
-            return null;
+            return true;
         }
+        return false;
+    }
 
-        if (status == 200) {
-            System.out.println("Successfully Data received from Maestro");
-            log.info("**Successfully Data received from Maestro API for Primary Role**");
+    static ObjectMapper createMapper() {
+        ObjectMapper mapperObj = new ObjectMapper();
+        mapperObj.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        mapperObj.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapperObj;
+    }
 
-            byte[] responseBody = result.getBody();
-            
-            if (responseBody == null || responseBody.length == 0) {
-                log.severe("Response body is empty");
-                System.err.println("Response body is empty");
-                return null;
-            }
-            
-            System.out.println("Response body length: " + responseBody.length);
-            
-            String decompressedJson = decompressData(responseBody);
-            
-            if (decompressedJson == null || decompressedJson.isEmpty()) {
-                log.severe("Failed to decompress or read the response data");
-                System.err.println("Failed to decompress or read the response data");
-                return null;
-            }
-            
-            System.out.println("Decompressed JSON length: " + decompressedJson.length());
-            // Print a sample of the decompressed JSON
-            System.out.println("Sample JSON: " + decompressedJson.substring(0, Math.min(500, decompressedJson.length())));
+    private ResponseInternal processResponseObjects(List<ResponseInternal> responseObjects) {
+        List<InternalRegistrations> allInternalRegistrations = new ArrayList<>();
+        int totalRecords = 0;
+        int recordsWithSubbooking = 0;
 
-            try {
-                ObjectMapper mapperObj = new ObjectMapper();
-                mapperObj.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
-                mapperObj.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-                // First try parsing as a list
-                List<ResponseInternal> responseObjects = null;
-                try {
-                    responseObjects = mapperObj.readValue(decompressedJson,
-                            new TypeReference<List<ResponseInternal>>() {});
-                    System.out.println("Parsed response as List<ResponseInternal>, size: " + 
-                                      (responseObjects != null ? responseObjects.size() : "null"));
-                } catch (Exception e) {
-                    log.warning("Failed to parse as list, trying as single object: " + e.getMessage());
-                    System.out.println("Failed to parse as list, trying as single object: " + e.getMessage());
+        if (responseObjects != null && !responseObjects.isEmpty()) {
+            for (ResponseInternal wrapper : responseObjects) {
+                if (wrapper.getInternalRegistrations() != null) {
+                    System.out.println("Processing " + wrapper.getInternalRegistrations().size() + " internal registrations");
                     
-                    // Try parsing as a single object
-                    try {
-                        ResponseInternal singleResponse = mapperObj.readValue(decompressedJson, ResponseInternal.class);
-                        responseObjects = new ArrayList<>();
-                        responseObjects.add(singleResponse);
-                        System.out.println("Parsed response as single ResponseInternal object");
-                    } catch (Exception e2) {
-                        log.severe("Failed to parse as single object: " + e2.getMessage());
-                        System.err.println("Failed to parse as single object: " + e2.getMessage());
-                        
-                        // Try to manually extract and parse the JSON structure
-                        System.out.println("Attempting manual JSON analysis...");
-                        if (decompressedJson.contains("entityId") && decompressedJson.contains("registrations")) {
-                            System.out.println("JSON contains entityId and registrations fields");
-                            // Analyze the JSON structure to determine the correct parsing approach
-                        }
+                    // Process each internal registration
+                    for (InternalRegistrations internalRegistrations : wrapper.getInternalRegistrations()) {
+                        totalRecords++;
                         
-                        throw e2;
-                    }
-                }
-
-                // Process the response
-                List<InternalRegistrations> allInternalRegistrations = new ArrayList<>();
-                int totalRecords = 0;
-                int recordsWithSubbooking = 0;
-
-                if (responseObjects != null && !responseObjects.isEmpty()) {
-                    for (ResponseInternal wrapper : responseObjects) {
-                        if (wrapper.getInternalRegistrations() != null) {
-                            System.out.println("Processing " + wrapper.getInternalRegistrations().size() + " internal registrations");
+                        // Check and pad BDRID if needed
+                        if (internalRegistrations.getEntityId() != null) {
+                            String bdrid = internalRegistrations.getEntityId();
+                            System.out.println("Processing entityId: " + bdrid);
+                            
+                            if (bdrid.length() < 10) {
+                                // Pad with leading zeros to make it 10 digits
+                                bdrid = String.format("%010d", Long.parseLong(bdrid));
+                                internalRegistrations.setEntityId(bdrid);
+                                System.out.println("Padded entityId: " + bdrid);
+                            }
                             
-                            // Process each internal registration
-                            for (InternalRegistrations internalRegistrations : wrapper.getInternalRegistrations()) {
-                                totalRecords++;
+                            // Process registrations for this entityId
+                            if (internalRegistrations.getRegistrations() != null) {
+                                System.out.println("Found " + internalRegistrations.getRegistrations().size() + 
+                                                  " registrations for entityId: " + bdrid);
                                 
-                                // Check and pad BDRID if needed
-                                if (internalRegistrations.getEntityId() != null) {
-                                    String bdrid = internalRegistrations.getEntityId();
-                                    System.out.println("Processing entityId: " + bdrid);
+                                for (Registration registration : internalRegistrations.getRegistrations()) {
+                                    String code = registration.getCode();
+                                    System.out.println("Processing registration code: " + code);
                                     
-                                    if (bdrid.length() < 10) {
-                                        // Pad with leading zeros to make it 10 digits
-                                        bdrid = String.format("%010d", Long.parseLong(bdrid));
-                                        internalRegistrations.setEntityId(bdrid);
-                                        System.out.println("Padded entityId: " + bdrid);
-                                    }
-                                    
-                                    // Process registrations for this entityId
-                                    if (internalRegistrations.getRegistrations() != null) {
-                                        System.out.println("Found " + internalRegistrations.getRegistrations().size() + 
-                                                          " registrations for entityId: " + bdrid);
+                                    // Check if this registration has subbooking entities
+                                    if (registration.getSubBookingEntities() != null && 
+                                        !registration.getSubBookingEntities().isEmpty()) {
+                                        
+                                        System.out.println("Found " + registration.getSubBookingEntities().size() + 
+                                                          " subbookingEntities for code: " + code);
                                         
-                                        for (Registration registration : internalRegistrations.getRegistrations()) {
-                                            String code = registration.getCode();
-                                            System.out.println("Processing registration code: " + code);
+                                        // Process each subbooking entity
+                                        for (SubBookingEntity subBookingEntity : registration.getSubBookingEntities()) {
+                                            String subbookingId = subBookingEntity.getSubbookingId();
+                                            recordsWithSubbooking++;
                                             
-                                            // Check if this registration has subbooking entities
-                                            if (registration.getSubBookingEntities() != null && 
-                                                !registration.getSubBookingEntities().isEmpty()) {
-                                                
-                                                System.out.println("Found " + registration.getSubBookingEntities().size() + 
-                                                                  " subbookingEntities for code: " + code);
-                                                
-                                                // Process each subbooking entity
-                                                for (SubBookingEntity subBookingEntity : registration.getSubBookingEntities()) {
-                                                    String subbookingId = subBookingEntity.getSubbookingId();
-                                                    recordsWithSubbooking++;
-                                                    
-                                                    System.out.println("Found record - EntityId: " + bdrid + 
-                                                                      ", Code: " + code + 
-                                                                      ", SubbookingId: " + subbookingId);
-                                                    
-                                                    // Here you would typically add to your data model or prepare for storage
-                                                    // Create a record with the format:
-                                                    // CODAPP: code (e.g., CIF, LOA)
-                                                    // CODTRS: "0" + bdrid (padded entityId)
-                                                    // NUMNTTIPL: bdrid (entityId)
-                                                    // NUMIPL: subbookingId
-                                                    // CODETBGES: "SGCIB"
-                                                    
-                                                    // For now, just log the values
-                                                    System.out.println("Record to prepare: CODAPP=" + code + 
-                                                                      ", CODTRS=0" + bdrid + 
-                                                                      ", NUMNTTIPL=" + bdrid + 
-                                                                      ", NUMIPL=" + subbookingId + 
-                                                                      ", CODETBGES=SGCIB");
-                                                }
-                                            } else {
-                                                System.out.println("No subbookingEntities found for code: " + code);
-                                            }
+                                            System.out.println("Found record - EntityId: " + bdrid + 
+                                                              ", Code: " + code + 
+                                                              ", SubbookingId: " + subbookingId);
+                                            
+                                            // Here you would typically add to your data model or prepare for storage
+                                            // Create a record with the format:
+                                            // CODAPP: code (e.g., CIF, LOA)
+                                            // CODTRS: "0" + bdrid (padded entityId)
+                                            // NUMNTTIPL: bdrid (entityId)
+                                            // NUMIPL: subbookingId
+                                            // CODETBGES: "SGCIB"
+                                            
+                                            // For now, just log the values
+                                            System.out.println("Record to prepare: CODAPP=" + code + 
+                                                              ", CODTRS=0" + bdrid + 
+                                                              ", NUMNTTIPL=" + bdrid + 
+                                                              ", NUMIPL=" + subbookingId + 
+                                                              ", CODETBGES=SGCIB");
                                         }
                                     } else {
-                                        System.out.println("No registrations found for entityId: " + bdrid);
+                                        System.out.println("No subbookingEntities found for code: " + code);
                                     }
                                 }
+                            } else {
+                                System.out.println("No registrations found for entityId: " + bdrid);
                             }
-                            
-                            allInternalRegistrations.addAll(wrapper.getInternalRegistrations());
-                        } else {
-                            System.out.println("No internal registrations found in response wrapper");
                         }
                     }
+                    
+                    allInternalRegistrations.addAll(wrapper.getInternalRegistrations());
                 } else {
-                    System.out.println("No response objects found after parsing");
+                    System.out.println("No internal registrations found in response wrapper");
                 }
-
-                System.out.println("Total records processed: " + totalRecords);
-                System.out.println("Records with subbooking: " + recordsWithSubbooking);
-
-                // Create the response object
-                ResponseInternal transformedData = new ResponseInternal();
-                transformedData.setInternalRegistrations(allInternalRegistrations);
-
-                String transformedJson = mapperObj.writeValueAsString(transformedData);
-                responseObject = mapperObj.readValue(transformedJson, ResponseInternal.class);
-
-            } catch (JsonProcessingException e) {
-                System.err.println("Error parsing JSON: " + e.getMessage());
-                log.severe("Error parsing JSON: " + e.getMessage());
-                e.printStackTrace();
             }
         } else {
-            System.err.println("Unexpected status code: " + status);
-            log.severe("Unexpected status code: " + status);
+            System.out.println("No response objects found after parsing");
         }
 
-        System.out.println("Completed sendPrimaryroleApi method");
-        return responseObject;
+        System.out.println("Total records processed: " + totalRecords);
+        System.out.println("Records with subbooking: " + recordsWithSubbooking);
+
+        // Create the response object
+        ResponseInternal transformedData = new ResponseInternal();
+        transformedData.setInternalRegistrations(allInternalRegistrations);
+        return transformedData;
+    }
+
+    // Best effort: a failed export is logged and does not fail the load
+    private void exportBinarySnapshot(ResponseInternal transformedData, LocalDate snapshotDate) {
+        if (binarySnapshotDir == null || binarySnapshotDir.isEmpty()) {
+            return;
+        }
+        Path target = Path.of(binarySnapshotDir, "primaryrole-" + snapshotDate + ".msnp");
+        try {
+            long bytes = SnapshotBinaryWriter.write(transformedData, target);
+            log.info("Binary snapshot written to " + target + " (" + bytes + " bytes)");
+        } catch (IOException e) {
+            log.warning("Could not write binary snapshot to " + target + ": " + e.getMessage());
+        }
     }
 }
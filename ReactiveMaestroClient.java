@@ -0,0 +1,107 @@
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+// Non-blocking counterpart of RestClientUtility.sendPrimaryroleApi. The body is inflated
+// by Reactor Netty as it arrives and split into InternalRegistrations, one entity at a time,
+// at the pace the subscriber requests them.
+@Component("reactiveMaestroClient")
+public class ReactiveMaestroClient {
+
+    private static final Logger log = Logger.getLogger(ReactiveMaestroClient.class.getName());
+
+    // Keep only a couple of network chunks queued ahead of the subscriber
+    private static final int CHUNK_PREFETCH = 2;
+
+    @Autowired
+    ObeclientProperties dbeclientProperties;
+
+    @Autowired
+    private RestClientUtility restClientUtility;
+
+    private final WebClient webClient = WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create().compress(true)))
+            .build();
+
+    public Flux<InternalRegistrations> streamPrimaryroleApi(LocalDate snapshotDate) {
+        return streamPrimaryroleApi(SnapshotDates.queryFor(snapshotDate));
+    }
+
+    public Flux<InternalRegistrations> streamPrimaryroleApi(String maestrodate) {
+        String url = this.dbeclientProperties.getMaestrorelationshipApiUrl() + maestrodate;
+
+        // Token generation is blocking, keep it off the event loop
+        return Mono.fromCallable(restClientUtility::generatePrimaryroleToken)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(accessToken -> Flux.defer(() -> {
+                    InternalRegistrationsSplitter splitter = newSplitter();
+
+                    Flux<DataBuffer> body = webClient.get()
+                            .uri(url)
+                            // The same headers as the blocking transports
+                            .headers(headers -> headers.addAll(restClientUtility.primaryroleHeaders(accessToken)))
+                            .retrieve()
+                            .bodyToFlux(DataBuffer.class);
+
+                    return body
+                            .concatMapIterable(buffer -> split(splitter, buffer), CHUNK_PREFETCH)
+                            .concatWith(Flux.defer(() -> Flux.fromIterable(finish(splitter))));
+                }))
+                .map(this::padEntityId)
+                .doOnSubscribe(subscription -> log.info("Streaming Maestro API for Primary Role from " + url))
+                .doOnError(e -> log.severe("Exception while streaming API: " + e.getMessage()));
+    }
+
+    private InternalRegistrationsSplitter newSplitter() {
+        try {
+            return new InternalRegistrationsSplitter(RestClientUtility.createMapper());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<InternalRegistrations> split(InternalRegistrationsSplitter splitter, DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return splitter.feed(bytes, 0, bytes.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private static List<InternalRegistrations> finish(InternalRegistrationsSplitter splitter) {
+        try {
+            return splitter.endOfInput();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private InternalRegistrations padEntityId(InternalRegistrations internalRegistrations) {
+        String bdrid = internalRegistrations.getEntityId();
+        if (bdrid != null && bdrid.length() < 10) {
+            // Pad with leading zeros to make it 10 digits
+            internalRegistrations.setEntityId(String.format("%010d", Long.parseLong(bdrid)));
+        }
+        return internalRegistrations;
+    }
+}
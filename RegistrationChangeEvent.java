@@ -0,0 +1,69 @@
+package com.socgen.riskweb.dao;
+
+// One difference between two consecutive lookup generations. A REGISTRATION event is about an
+// entity's code; a SUBBOOKING event about one subbookingId under that code.
+public final class RegistrationChangeEvent {
+
+    public enum ChangeType {
+        ADDED, MODIFIED, REMOVED
+    }
+
+    public enum Level {
+        REGISTRATION, SUBBOOKING
+    }
+
+    private final long generation;
+    private final ChangeType type;
+    private final Level level;
+    private final String entityId;
+    private final String code;
+    private final String subbookingId;
+
+    RegistrationChangeEvent(long generation, ChangeType type, Level level, String entityId, String code,
+                            String subbookingId) {
+        this.generation = generation;
+        this.type = type;
+        this.level = level;
+        this.entityId = entityId;
+        this.code = code;
+        this.subbookingId = subbookingId;
+    }
+
+    // The generation the change appeared in
+    public long getGeneration() {
+        return generation;
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    // null for REGISTRATION events
+    public String getSubbookingId() {
+        return subbookingId;
+    }
+
+    @Override
+    public String toString() {
+        return "RegistrationChangeEvent{" +
+               "generation=" + generation +
+               ", type=" + type +
+               ", level=" + level +
+               ", entityId='" + entityId + '\'' +
+               ", code='" + code + '\'' +
+               ", subbookingId='" + subbookingId + '\'' +
+               '}';
+    }
+}
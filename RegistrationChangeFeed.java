@@ -0,0 +1,249 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Diffs each newly published lookup generation against the one it replaces and hands the
+// differences to the ChangeFeedSinks. Both indexes are walked once in key order:
+//   entity or code only in the new generation  REGISTRATION ADDED, SUBBOOKING ADDED per subbookingId
+//   entity or code only in the old generation  REGISTRATION REMOVED, SUBBOOKING REMOVED per subbookingId
+//   code in both, subbookingIds differ          REGISTRATION MODIFIED, SUBBOOKING ADDED/REMOVED
+// The indexes keep codes and subbookingIds only, so a label or value change is not an event.
+// The first generation after startup has nothing to compare with; it is only diffed against
+// the empty index (everything ADDED) when maestro.changefeed.emitInitial is set.
+// publish() only queues the generation: the diff and the sinks run on one feed thread, so a
+// load never waits on a broker and generations go out whole and in the order they were queued.
+// At most one generation waits: a newer one folds into it, diffed from the waiting one's base,
+// so a slow sink holds two indexes and not every generation published meanwhile.
+// Events carry the entityId as loaded; an entity whose spelling changed between generations
+// (the same key) is reported under the new one, or the old one when it was removed.
+@Component
+public class RegistrationChangeFeed implements DisposableBean {
+
+    private static final Logger log = Logger.getLogger(RegistrationChangeFeed.class.getName());
+
+    @Autowired(required = false)
+    private List<ChangeFeedSink> sinks = new ArrayList<>();
+
+    @Value("${maestro.changefeed.emitInitial:false}")
+    private boolean emitInitial;
+
+    private final ExecutorService feedThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "maestro-changefeed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The generation queued but not taken by the feed thread yet; guarded by this
+    private Pending pending;
+
+    private static final class Pending {
+        private final RegistrationLookupIndex previous;
+        private final long generation;
+        private final RegistrationLookupIndex next;
+
+        Pending(RegistrationLookupIndex previous, long generation, RegistrationLookupIndex next) {
+            this.previous = previous;
+            this.generation = generation;
+            this.next = next;
+        }
+    }
+
+    // Callers queue generations in generation order
+    void publish(long previousGeneration, RegistrationLookupIndex previous,
+                 long generation, RegistrationLookupIndex next) {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        if (previousGeneration == 0 && !emitInitial) {
+            log.info("No previous generation to diff against; change feed starts after generation " + generation);
+            return;
+        }
+        synchronized (this) {
+            if (pending != null) {
+                log.info("Generation " + pending.generation + " was not fed yet, folded into " + generation);
+                pending = new Pending(pending.previous, generation, next);
+                return;
+            }
+            pending = new Pending(previous, generation, next);
+        }
+        feedThread.execute(this::feedPending);
+    }
+
+    private void feedPending() {
+        Pending work;
+        synchronized (this) {
+            work = pending;
+            pending = null;
+        }
+        feed(work.previous, work.generation, work.next);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // Lets the queued generations go out, within reason
+        feedThread.shutdown();
+        if (!feedThread.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warning("Change feed still busy at shutdown, dropping " + feedThread.shutdownNow().size()
+                    + " queued generations");
+        }
+    }
+
+    private void feed(RegistrationLookupIndex previous, long generation, RegistrationLookupIndex next) {
+        // A sink that throws is dropped for the rest of this generation; the others carry on
+        List<ChangeFeedSink> active = new ArrayList<>();
+        for (ChangeFeedSink sink : sinks) {
+            try {
+                sink.generationStarted(generation);
+                active.add(sink);
+            } catch (RuntimeException e) {
+                abort(sink, generation, e);
+            }
+        }
+        long events = diff(previous, next, generation, event -> {
+            for (int i = active.size() - 1; i >= 0; i--) {
+                try {
+                    active.get(i).onChange(event);
+                } catch (RuntimeException e) {
+                    abort(active.remove(i), generation, e);
+                }
+            }
+        });
+        for (ChangeFeedSink sink : active) {
+            try {
+                sink.generationComplete(generation, events);
+            } catch (RuntimeException e) {
+                log.warning("Change feed sink " + sink.getClass().getSimpleName()
+                        + " failed to complete generation " + generation + ": " + e.getMessage());
+            }
+        }
+        log.info("Change feed for generation " + generation + ": " + events + " events");
+    }
+
+    private static void abort(ChangeFeedSink sink, long generation, RuntimeException cause) {
+        log.warning("Change feed sink " + sink.getClass().getSimpleName()
+                + " failed in generation " + generation + ": " + cause.getMessage());
+        try {
+            sink.generationAborted(generation);
+        } catch (RuntimeException e) {
+            log.warning("Change feed sink " + sink.getClass().getSimpleName()
+                    + " failed to abort generation " + generation + ": " + e.getMessage());
+        }
+    }
+
+    // Returns the number of events emitted
+    static long diff(RegistrationLookupIndex previous, RegistrationLookupIndex next, long generation,
+                     Consumer<RegistrationChangeEvent> consumer) {
+        List<RegistrationLookupIndex.RegistrationRef> previousRefs = new ArrayList<>();
+        List<RegistrationLookupIndex.RegistrationRef> nextRefs = new ArrayList<>();
+        long events = 0;
+        int p = 0;
+        int n = 0;
+        while (p < previous.size() || n < next.size()) {
+            long key;
+            if (p == previous.size()) {
+                key = next.keyAt(n);
+            } else if (n == next.size()) {
+                key = previous.keyAt(p);
+            } else {
+                key = Math.min(previous.keyAt(p), next.keyAt(n));
+            }
+
+            // An entity listed twice in a snapshot has adjacent slots
+            String entityId = null;
+            nextRefs.clear();
+            if (n < next.size() && next.keyAt(n) == key) {
+                entityId = next.entityIdAt(n);
+            }
+            while (n < next.size() && next.keyAt(n) == key) {
+                next.refsAt(n++, nextRefs);
+            }
+            previousRefs.clear();
+            if (entityId == null) {
+                entityId = previous.entityIdAt(p);
+            }
+            while (p < previous.size() && previous.keyAt(p) == key) {
+                previous.refsAt(p++, previousRefs);
+            }
+            events += diffEntity(entityId, byCode(previousRefs), byCode(nextRefs), generation, consumer);
+        }
+        return events;
+    }
+
+    private static long diffEntity(String entityId, Map<String, Set<String>> before, Map<String, Set<String>> after,
+                                   long generation, Consumer<RegistrationChangeEvent> consumer) {
+        long events = 0;
+        for (Map.Entry<String, Set<String>> registration : after.entrySet()) {
+            String code = registration.getKey();
+            Set<String> previousSubbookings = before.get(code);
+            if (previousSubbookings == null) {
+                events += emit(consumer, generation, RegistrationChangeEvent.ChangeType.ADDED, entityId, code,
+                        registration.getValue());
+            } else if (!previousSubbookings.equals(registration.getValue())) {
+                consumer.accept(new RegistrationChangeEvent(generation, RegistrationChangeEvent.ChangeType.MODIFIED,
+                        RegistrationChangeEvent.Level.REGISTRATION, entityId, code, null));
+                events++;
+                events += emitSubbookings(consumer, generation, RegistrationChangeEvent.ChangeType.ADDED,
+                        entityId, code, registration.getValue(), previousSubbookings);
+                events += emitSubbookings(consumer, generation, RegistrationChangeEvent.ChangeType.REMOVED,
+                        entityId, code, previousSubbookings, registration.getValue());
+            }
+        }
+        for (Map.Entry<String, Set<String>> registration : before.entrySet()) {
+            if (!after.containsKey(registration.getKey())) {
+                events += emit(consumer, generation, RegistrationChangeEvent.ChangeType.REMOVED, entityId,
+                        registration.getKey(), registration.getValue());
+            }
+        }
+        return events;
+    }
+
+    private static long emit(Consumer<RegistrationChangeEvent> consumer, long generation,
+                             RegistrationChangeEvent.ChangeType type, String entityId, String code,
+                             Set<String> subbookingIds) {
+        consumer.accept(new RegistrationChangeEvent(generation, type, RegistrationChangeEvent.Level.REGISTRATION,
+                entityId, code, null));
+        return 1 + emitSubbookings(consumer, generation, type, entityId, code, subbookingIds, Set.of());
+    }
+
+    // Emits the subbookingIds of the first set missing from the second
+    private static long emitSubbookings(Consumer<RegistrationChangeEvent> consumer, long generation,
+                                        RegistrationChangeEvent.ChangeType type, String entityId, String code,
+                                        Set<String> subbookingIds, Set<String> except) {
+        long events = 0;
+        for (String subbookingId : subbookingIds) {
+            if (!except.contains(subbookingId)) {
+                consumer.accept(new RegistrationChangeEvent(generation, type, RegistrationChangeEvent.Level.SUBBOOKING,
+                        entityId, code, subbookingId));
+                events++;
+            }
+        }
+        return events;
+    }
+
+    // code -> its subbookingIds; a registration without subbookings maps to an empty set
+    private static Map<String, Set<String>> byCode(List<RegistrationLookupIndex.RegistrationRef> refs) {
+        Map<String, Set<String>> registrations = new LinkedHashMap<>();
+        for (RegistrationLookupIndex.RegistrationRef ref : refs) {
+            Set<String> subbookingIds = registrations.computeIfAbsent(ref.getCode(), code -> new LinkedHashSet<>());
+            if (ref.getSubbookingId() != null) {
+                subbookingIds.add(ref.getSubbookingId());
+            }
+        }
+        return registrations;
+    }
+}
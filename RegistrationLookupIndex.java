@@ -0,0 +1,302 @@
+package com.socgen.riskweb.dao;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+// Immutable entityId -> (code, subbookingId) index for one loaded snapshot.
+// Keys, offsets and the encoded rows live in direct buffers; only the code and
+// subbookingId dictionaries stay on heap. Per entity the data region holds
+// varint(leading zeros + 1), varint(rowCount), then varint(codeId) varint(subbookingId + 1, 0 = null)
+// per row. The leading zeros give the entityId back as loaded from its key; the rare entityId
+// that is not zeros followed by the key's digits (a sign, say) is stored as 0 and kept on heap.
+public final class RegistrationLookupIndex {
+
+    private static final Logger log = Logger.getLogger(RegistrationLookupIndex.class.getName());
+
+    public static final RegistrationLookupIndex EMPTY = new Builder().build();
+
+    public static final class RegistrationRef {
+        private final String code;
+        private final String subbookingId;
+
+        RegistrationRef(String code, String subbookingId) {
+            this.code = code;
+            this.subbookingId = subbookingId;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getSubbookingId() {
+            return subbookingId;
+        }
+
+        @Override
+        public String toString() {
+            return "RegistrationRef{" +
+                   "code='" + code + '\'' +
+                   ", subbookingId='" + subbookingId + '\'' +
+                   '}';
+        }
+    }
+
+    private final ByteBuffer keys;     // sorted longs
+    private final ByteBuffer offsets;  // int offset into data, parallel to keys
+    private final ByteBuffer data;
+    private final String[] codes;
+    private final String[] subbookingIds;
+    private final Map<Integer, String> literalEntityIds; // by slot
+    private final int size;
+
+    private RegistrationLookupIndex(ByteBuffer keys, ByteBuffer offsets, ByteBuffer data,
+                                    String[] codes, String[] subbookingIds, Map<Integer, String> literalEntityIds,
+                                    int size) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.data = data;
+        this.codes = codes;
+        this.subbookingIds = subbookingIds;
+        this.literalEntityIds = literalEntityIds;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long offHeapBytes() {
+        return keys.capacity() + offsets.capacity() + data.capacity();
+    }
+
+    public boolean contains(long bdrid) {
+        return find(bdrid) >= 0;
+    }
+
+    public List<RegistrationRef> lookup(String entityId) {
+        Long bdrid = toKey(entityId);
+        return bdrid == null ? Collections.emptyList() : lookup(bdrid);
+    }
+
+    public List<RegistrationRef> lookup(long bdrid) {
+        int slot = find(bdrid);
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        // An entity that appeared more than once in the snapshot has adjacent slots
+        while (slot > 0 && keyAt(slot - 1) == bdrid) {
+            slot--;
+        }
+        List<RegistrationRef> refs = new ArrayList<>();
+        for (; slot < size && keyAt(slot) == bdrid; slot++) {
+            decode(offsets.getInt(slot * Integer.BYTES), refs);
+        }
+        return refs;
+    }
+
+    // Visits every entity in key order; used to diff generations without materialising them
+    public void forEachKey(LongConsumer consumer) {
+        for (int slot = 0; slot < size; slot++) {
+            consumer.accept(keyAt(slot));
+        }
+    }
+
+    public static Long toKey(String entityId) {
+        if (entityId == null || entityId.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(entityId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long keyAt(int slot) {
+        return keys.getLong(slot * Long.BYTES);
+    }
+
+    // Appends the rows of one slot; slots run in key order from 0 to size() - 1
+    void refsAt(int slot, List<RegistrationRef> refs) {
+        decode(offsets.getInt(slot * Integer.BYTES), refs);
+    }
+
+    // The entityId of one slot as it was loaded
+    String entityIdAt(int slot) {
+        int[] position = {offsets.getInt(slot * Integer.BYTES)};
+        int leadingZeros = readVarint(data, position) - 1;
+        if (leadingZeros < 0) {
+            return literalEntityIds.get(slot);
+        }
+        return "0".repeat(leadingZeros) + keyAt(slot);
+    }
+
+    private int find(long bdrid) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = keyAt(mid);
+            if (key < bdrid) {
+                low = mid + 1;
+            } else if (key > bdrid) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void decode(int offset, List<RegistrationRef> refs) {
+        int[] position = {offset};
+        readVarint(data, position); // leading zeros
+        int rowCount = readVarint(data, position);
+        for (int i = 0; i < rowCount; i++) {
+            int codeId = readVarint(data, position);
+            int subbookingRef = readVarint(data, position);
+            refs.add(new RegistrationRef(codes[codeId], subbookingRef == 0 ? null : subbookingIds[subbookingRef - 1]));
+        }
+    }
+
+    private static int readVarint(ByteBuffer buffer, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    // Accumulates entities in arrival order; build() sorts the keys and copies everything off heap.
+    // Not thread-safe.
+    public static final class Builder {
+        private final Map<String, Integer> codeIds = new HashMap<>();
+        private final Map<String, Integer> subbookingIdIds = new HashMap<>();
+        private final List<Object[]> rows = new ArrayList<>();
+        private final Map<Integer, String> literalEntityIds = new HashMap<>(); // by arrival
+
+        private long[] entityKeys = new long[1024];
+        private int[] entityOffsets = new int[1024];
+        private int count;
+        private int skipped;
+        private ByteBuffer data = ByteBuffer.allocateDirect(64 * 1024);
+
+        public Builder add(InternalRegistrations internalReg) {
+            Long bdrid = toKey(internalReg.getEntityId());
+            if (bdrid == null) {
+                skipped++;
+                return this;
+            }
+
+            rows.clear();
+            PrimaryRoleFlattener.flatten(internalReg, rows);
+
+            if (count == entityKeys.length) {
+                entityKeys = Arrays.copyOf(entityKeys, count * 2);
+                entityOffsets = Arrays.copyOf(entityOffsets, count * 2);
+            }
+            entityKeys[count] = bdrid;
+            entityOffsets[count] = data.position();
+            String digits = Long.toString(bdrid);
+            int leadingZeros = internalReg.getEntityId().length() - digits.length();
+            if (leadingZeros >= 0 && internalReg.getEntityId().equals("0".repeat(leadingZeros) + digits)) {
+                writeVarint(leadingZeros + 1);
+            } else {
+                writeVarint(0);
+                literalEntityIds.put(count, internalReg.getEntityId());
+            }
+            count++;
+
+            writeVarint(rows.size());
+            for (Object[] row : rows) {
+                writeVarint(dictionaryId(codeIds, (String) row[1]));
+                writeVarint(row[2] == null ? 0 : dictionaryId(subbookingIdIds, (String) row[2]) + 1);
+            }
+            return this;
+        }
+
+        public RegistrationLookupIndex build() {
+            // Sort slots by key, carrying each entity's data offset along
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(entityKeys[a], entityKeys[b]));
+
+            ByteBuffer keys = ByteBuffer.allocateDirect(count * Long.BYTES).order(ByteOrder.nativeOrder());
+            ByteBuffer offsets = ByteBuffer.allocateDirect(count * Integer.BYTES).order(ByteOrder.nativeOrder());
+            Map<Integer, String> literalsBySlot = new HashMap<>();
+            for (int slot = 0; slot < count; slot++) {
+                keys.putLong(slot * Long.BYTES, entityKeys[order[slot]]);
+                offsets.putInt(slot * Integer.BYTES, entityOffsets[order[slot]]);
+                String literal = literalEntityIds.get(order[slot]);
+                if (literal != null) {
+                    literalsBySlot.put(slot, literal);
+                }
+            }
+
+            ByteBuffer packed = ByteBuffer.allocateDirect(data.position());
+            ByteBuffer source = data.duplicate();
+            source.flip();
+            packed.put(source);
+            packed.flip();
+
+            if (skipped > 0) {
+                log.warning("Skipped " + skipped + " entities without a numeric entityId");
+            }
+            return new RegistrationLookupIndex(keys.asReadOnlyBuffer().order(ByteOrder.nativeOrder()),
+                    offsets.asReadOnlyBuffer().order(ByteOrder.nativeOrder()),
+                    packed.asReadOnlyBuffer(),
+                    toArray(codeIds), toArray(subbookingIdIds), literalsBySlot, count);
+        }
+
+        private void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                data.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            data.put((byte) value);
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (data.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(data.capacity() * 2);
+                data.flip();
+                grown.put(data);
+                data = grown;
+            }
+        }
+
+        private static int dictionaryId(Map<String, Integer> dictionary, String value) {
+            Integer id = dictionary.get(value);
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.put(value, id);
+            }
+            return id;
+        }
+
+        private static String[] toArray(Map<String, Integer> dictionary) {
+            String[] values = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                values[entry.getValue()] = entry.getKey();
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.socgen.riskweb.dao;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+// Serves entityId -> registrations lookups, and the reverse subbookingId/code -> entities
+// queries, from the last successfully loaded snapshot. Readers always see one complete
+// generation; publish() swaps in the next one atomically, then feeds the differences with
+// the replaced generation to the change feed.
+@Component
+public class RegistrationLookupService {
+
+    private static final Logger log = Logger.getLogger(RegistrationLookupService.class.getName());
+
+    private static final class Generation {
+        private final long number;
+        private final RegistrationLookupIndex lookupIndex;
+        private final PrimaryRoleReverseIndex reverseIndex;
+
+        Generation(long number, RegistrationLookupIndex lookupIndex, PrimaryRoleReverseIndex reverseIndex) {
+            this.number = number;
+            this.lookupIndex = lookupIndex;
+            this.reverseIndex = reverseIndex;
+        }
+    }
+
+    @Autowired
+    private RegistrationChangeFeed changeFeed;
+
+    private final AtomicReference<Generation> current =
+            new AtomicReference<>(new Generation(0, RegistrationLookupIndex.EMPTY, PrimaryRoleReverseIndex.EMPTY));
+
+    public List<RegistrationLookupIndex.RegistrationRef> lookup(String entityId) {
+        return current.get().lookupIndex.lookup(entityId);
+    }
+
+    public List<RegistrationLookupIndex.RegistrationRef> lookup(long bdrid) {
+        return current.get().lookupIndex.lookup(bdrid);
+    }
+
+    public List<String> entitiesBookingThrough(String subbookingId) {
+        return current.get().reverseIndex.entitiesBookingThrough(subbookingId);
+    }
+
+    public List<String> entitiesWithCode(String code) {
+        return current.get().reverseIndex.entitiesWithCode(code);
+    }
+
+    public List<String> entitiesWithCodeBookingThrough(String code, String subbookingId) {
+        return current.get().reverseIndex.entitiesWithCodeBookingThrough(code, subbookingId);
+    }
+
+    public RegistrationLookupIndex currentIndex() {
+        return current.get().lookupIndex;
+    }
+
+    public PrimaryRoleReverseIndex currentReverseIndex() {
+        return current.get().reverseIndex;
+    }
+
+    public long currentGeneration() {
+        return current.get().number;
+    }
+
+    public void publish(List<InternalRegistrations> internalRegistrationsList, PrimaryRoleReverseIndex reverseIndex) {
+        RegistrationLookupIndex.Builder builder = new RegistrationLookupIndex.Builder();
+        for (InternalRegistrations internalReg : internalRegistrationsList) {
+            builder.add(internalReg);
+        }
+        publish(builder.build(), reverseIndex);
+    }
+
+    // Synchronized so generations reach the change feed in the order they were swapped in;
+    // the feed only queues them, readers never take the lock
+    public synchronized void publish(RegistrationLookupIndex index, PrimaryRoleReverseIndex reverseIndex) {
+        Generation previous = current.get();
+        Generation next = new Generation(previous.number + 1, index, reverseIndex);
+        current.set(next);
+        log.info("Published lookup generation " + next.number + ": " + index.size() + " entities, "
+                + index.offHeapBytes() + " bytes off heap");
+
+        changeFeed.publish(previous.number, previous.lookupIndex, next.number, index);
+    }
+}
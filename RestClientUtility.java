@@ -7,7 +7,6 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -28,9 +27,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.socgen.riskweb.Model.InternalRegistrations;
 import com.socgen.riskweb.Model.SubBookingEntity;
 import com.socgen.riskweb.Model.ResponseInternal;
-import com.socgen.riskweb.Model.Registration;
 import com.socgen.riskweb.Model.MaestroTableEntity;
-import com.socgen.riskweb.dao.MaestroTableRepository;
+import com.socgen.riskweb.dao.MaestroTableBulkWriter;
 
 import static java.lang.System.out;
 import static java.sql.Types.NULL;
@@ -53,7 +51,7 @@ public class RestClientUtility {
     private ApplicationConfig applicationConfig;
     
     @Autowired
-    private MaestroTableRepository maestroTableRepository;
+    private MaestroTableBulkWriter maestroTableBulkWriter;
 
     private String decompressData(byte[] compressedBytes) {
         // First, try GZIP decompression
@@ -176,57 +174,27 @@ public class RestClientUtility {
                         new TypeReference<List<ResponseInternal>>() {});
 
                 List<InternalRegistrations> allInternalRegistrations = new ArrayList<>();
-                // List<MaestroTableEntity> maestroTableEntities = new ArrayList<>();
 
                 for (ResponseInternal wrapper : responseObjects) {
                     if (wrapper.getInternalRegistrations() != null) {
-                        // Process each internal registration
                         for (InternalRegistrations internalRegistrations : wrapper.getInternalRegistrations()) {
                             // Check and pad BDRID if needed
-                            if (internalRegistrations.getEntityId() != null) {
-                                String bdrid = internalRegistrations.getEntityId();
-                                if (bdrid.length() < 10) {
-                                    // Pad with leading zeros to make it 10 digits
-                                    bdrid = String.format("%010d", Long.parseLong(bdrid));
-                                    internalRegistrations.setEntityId(bdrid);
-                                }
-                                
-                                // Process registrations for this entityId
-                                if (internalRegistrations.getRegistrations() != null) {
-                                    for (Registration registration : internalRegistrations.getRegistrations()) {
-                                        String code = registration.getCode();
-                                        
-                                        // Check if this registration has subbooking entities
-                                        if (registration.getSubBookingEntities() != null && 
-                                            !registration.getSubBookingEntities().isEmpty()) {
-                                            
-                                            // Process each subbooking entity
-                                            for (SubBookingEntity subBookingEntity : registration.getSubBookingEntities()) {
-                                                // Create a table entity for each subbooking
-                                                MaestroTableEntity tableEntity = new MaestroTableEntity();
-                                                tableEntity.setCodapp(code);
-                                                tableEntity.setCodtrs("0" + bdrid); // Padded entityId
-                                                tableEntity.setNumnttipl(bdrid);    // Original entityId
-                                                tableEntity.setNumipl(subBookingEntity.getSubbookingId());
-                                                tableEntity.setCodetbges("SGCIB"); // Default value from sample
-                                                
-                                                maestroTableEntities.add(tableEntity);
-                                            }
-                                        }
-                                    }
-                                }
+                            String bdrid = internalRegistrations.getEntityId();
+                            if (bdrid != null && bdrid.length() < 10) {
+                                // Pad with leading zeros to make it 10 digits
+                                internalRegistrations.setEntityId(String.format("%010d", Long.parseLong(bdrid)));
                             }
                         }
-                        
                         allInternalRegistrations.addAll(wrapper.getInternalRegistrations());
                     }
                 }
-                
-                // Save all table entities to the database
-                if (!maestroTableEntities.isEmpty()) {
-                    saveMaestroTableEntities(maestroTableEntities);
-                    log.info("Saved " + maestroTableEntities.size() + " records to the database");
-                    System.out.println("Saved " + maestroTableEntities.size() + " records to the database");
+
+                // Save all table entities to the database. They are built as the writer pulls
+                // them, so only the writer's current chunk is ever held, never the whole snapshot
+                int saved = maestroTableBulkWriter.saveAll(tableEntities(allInternalRegistrations));
+                if (saved > 0) {
+                    log.info("Saved " + saved + " records to the database");
+                    System.out.println("Saved " + saved + " records to the database");
                 }
 
                 // Create the response object
@@ -249,9 +217,27 @@ public class RestClientUtility {
         System.out.println("Response object: " + responseObject);
         return responseObject;
     }
-    
-    @Transactional
-    private void saveMaestroTableEntities(List<MaestroTableEntity> entities) {
-        maestroTableRepository.saveAll(entities);
+
+    // One table entity per subbooking of every registration, created lazily while iterating
+    private static Iterable<MaestroTableEntity> tableEntities(List<InternalRegistrations> internalRegistrationsList) {
+        return () -> internalRegistrationsList.stream()
+                .filter(internalRegistrations -> internalRegistrations.getEntityId() != null
+                        && internalRegistrations.getRegistrations() != null)
+                .flatMap(internalRegistrations -> internalRegistrations.getRegistrations().stream()
+                        .filter(registration -> registration.getSubBookingEntities() != null)
+                        .flatMap(registration -> registration.getSubBookingEntities().stream()
+                                .map(subBookingEntity -> tableEntity(internalRegistrations.getEntityId(),
+                                        registration.getCode(), subBookingEntity))))
+                .iterator();
+    }
+
+    private static MaestroTableEntity tableEntity(String bdrid, String code, SubBookingEntity subBookingEntity) {
+        MaestroTableEntity tableEntity = new MaestroTableEntity();
+        tableEntity.setCodapp(code);
+        tableEntity.setCodtrs("0" + bdrid); // Padded entityId
+        tableEntity.setNumnttipl(bdrid);    // Original entityId
+        tableEntity.setNumipl(subBookingEntity.getSubbookingId());
+        tableEntity.setCodetbges("SGCIB"); // Default value from sample
+        return tableEntity;
     }
 }
@@ -0,0 +1,48 @@
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// HTTP/1.1 engine; RestTemplate buffers the whole body before the response is returned
+@Component("maestroTransport")
+@ConditionalOnProperty(name = "maestro.transport", havingValue = "resttemplate", matchIfMissing = true)
+public class RestTemplateMaestroTransport implements MaestroTransport {
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private final ExecutorService asyncExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "maestro-transport");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public Response send(String url, HttpHeaders headers) throws IOException {
+        ResponseEntity<byte[]> result = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>("", headers), byte[].class);
+        byte[] body = result.getBody();
+        return new Response(result.getStatusCode().value(), result.getHeaders(),
+                new ByteArrayInputStream(body == null ? new byte[0] : body));
+    }
+
+    @Override
+    public CompletableFuture<Response> sendAsync(String url, HttpHeaders headers) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(url, headers);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor);
+    }
+}
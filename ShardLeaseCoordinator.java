@@ -0,0 +1,262 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.logging.Logger;
+
+// Hands out shards of a snapshot load to any number of application instances through a
+// lease table in the loader database. A shard is claimed with a conditional UPDATE, kept
+// alive by heartbeats, and can be taken over by another instance once its lease expires.
+// Every claim bumps the shard's epoch; a batch only commits while its writer's owner and
+// epoch are still on the row (see LoadCheckpointStore.record), so a writer that lost its
+// lease cannot add rows after another instance took the shard over. Heartbeats, completion
+// and release are fenced the same way.
+//
+// The rows of a date outlive its load. When the table was emptied for another date since
+// (LoadCheckpointStore.holdsLoadOf), a new run of the date replaces them: one instance wins
+// shard 0 and recreates every row with an epoch above any the earlier run handed out.
+//
+// CREATE TABLE WK_TSMAESTRO_SHARD_LEASE (snapshotDate VARCHAR(10), shardId INT, firstOrdinal INT,
+//     endOrdinal INT, status VARCHAR(10), owner VARCHAR(128), leaseUntil TIMESTAMP, epoch INT,
+//     PRIMARY KEY (snapshotDate, shardId))
+@Component
+public class ShardLeaseCoordinator {
+
+    private static final Logger log = Logger.getLogger(ShardLeaseCoordinator.class.getName());
+
+    public static final String STATUS_INIT = "INIT";
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_CLAIMED = "CLAIMED";
+    public static final String STATUS_DONE = "DONE";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LoadCheckpointStore loadCheckpointStore;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public enum LeaseQueries {
+        QRY_LEASE_COUNT("SELECT COUNT(*) FROM WK_TSMAESTRO_SHARD_LEASE WHERE snapshotDate = ?"),
+        QRY_LEASE_INSERT("INSERT INTO WK_TSMAESTRO_SHARD_LEASE (snapshotDate, shardId, firstOrdinal, endOrdinal, status, owner, leaseUntil, epoch) VALUES (?, ?, ?, ?, ?, ?, ?, ?)"),
+        QRY_LEASE_FIRST_EPOCH("SELECT epoch FROM WK_TSMAESTRO_SHARD_LEASE WHERE snapshotDate = ? AND shardId = 0"),
+        QRY_LEASE_RESTART_FIRST("UPDATE WK_TSMAESTRO_SHARD_LEASE SET status = 'INIT', owner = ?, leaseUntil = ? WHERE snapshotDate = ? AND shardId = 0 AND status <> 'INIT' AND epoch = ?"),
+        QRY_LEASE_MAX_EPOCH("SELECT MAX(epoch) FROM WK_TSMAESTRO_SHARD_LEASE WHERE snapshotDate = ?"),
+        QRY_LEASE_DELETE("DELETE FROM WK_TSMAESTRO_SHARD_LEASE WHERE snapshotDate = ?"),
+        QRY_LEASE_INIT_TAKEOVER("UPDATE WK_TSMAESTRO_SHARD_LEASE SET owner = ?, leaseUntil = ? WHERE snapshotDate = ? AND shardId = 0 AND status = 'INIT' AND leaseUntil < ?"),
+        QRY_LEASE_OPEN_FIRST("UPDATE WK_TSMAESTRO_SHARD_LEASE SET status = 'PENDING', owner = NULL, leaseUntil = NULL WHERE snapshotDate = ? AND shardId = 0 AND status = 'INIT' AND owner = ?"),
+        QRY_LEASE_OPEN("UPDATE WK_TSMAESTRO_SHARD_LEASE SET status = 'PENDING', owner = NULL, leaseUntil = NULL WHERE snapshotDate = ? AND status = 'INIT'"),
+        QRY_LEASE_CANDIDATES("SELECT shardId FROM WK_TSMAESTRO_SHARD_LEASE WHERE snapshotDate = ? AND (status = 'PENDING' OR (status = 'CLAIMED' AND leaseUntil < ?)) ORDER BY shardId"),
+        QRY_LEASE_CLAIM("UPDATE WK_TSMAESTRO_SHARD_LEASE SET status = 'CLAIMED', owner = ?, leaseUntil = ?, epoch = epoch + 1 WHERE snapshotDate = ? AND shardId = ? AND (status = 'PENDING' OR (status = 'CLAIMED' AND leaseUntil < ?))"),
+        QRY_LEASE_RANGE("SELECT firstOrdinal, endOrdinal, epoch FROM WK_TSMAESTRO_SHARD_LEASE WHERE snapshotDate = ? AND shardId = ?"),
+        QRY_LEASE_HEARTBEAT("UPDATE WK_TSMAESTRO_SHARD_LEASE SET leaseUntil = ? WHERE snapshotDate = ? AND shardId = ? AND owner = ? AND epoch = ? AND status = 'CLAIMED'"),
+        QRY_LEASE_COMPLETE("UPDATE WK_TSMAESTRO_SHARD_LEASE SET status = 'DONE', leaseUntil = NULL WHERE snapshotDate = ? AND shardId = ? AND owner = ? AND epoch = ? AND status = 'CLAIMED'"),
+        QRY_LEASE_RELEASE("UPDATE WK_TSMAESTRO_SHARD_LEASE SET status = 'PENDING', owner = NULL, leaseUntil = NULL WHERE snapshotDate = ? AND shardId = ? AND owner = ? AND epoch = ? AND status = 'CLAIMED'"),
+        QRY_LEASE_REMAINING("SELECT COUNT(*) FROM WK_TSMAESTRO_SHARD_LEASE WHERE snapshotDate = ? AND status <> 'DONE'");
+
+        private final String value;
+
+        LeaseQueries(String value) {
+            this.value = value;
+        }
+
+        public String value() {
+            return value;
+        }
+    }
+
+    // One claim of a shard: the range, and the owner and epoch its batches are fenced with
+    public static class Shard {
+        private final String snapshotDate;
+        private final int shardId;
+        private final int firstOrdinal;
+        private final int endOrdinal;
+        private final String owner;
+        private final int epoch;
+
+        Shard(String snapshotDate, int shardId, int firstOrdinal, int endOrdinal, String owner, int epoch) {
+            this.snapshotDate = snapshotDate;
+            this.shardId = shardId;
+            this.firstOrdinal = firstOrdinal;
+            this.endOrdinal = endOrdinal;
+            this.owner = owner;
+            this.epoch = epoch;
+        }
+
+        public String getSnapshotDate() {
+            return snapshotDate;
+        }
+
+        public int getShardId() {
+            return shardId;
+        }
+
+        public int getFirstOrdinal() {
+            return firstOrdinal;
+        }
+
+        public int getEndOrdinal() {
+            return endOrdinal;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+    }
+
+    // Creates the shard rows for a snapshot once. The instance that wins the insert runs
+    // prepare (truncate) before opening the shards, so nobody writes into a table about to be emptied.
+    // The rows start out INIT under the creator's lease; should it die before opening them,
+    // takeOverStaleInit lets another instance prepare and open them once that lease expires.
+    public boolean initShards(String snapshotDate, int totalEntities, int shardCount, String owner, long leaseMillis,
+                              Runnable prepare) {
+        Integer existing = jdbcTemplate.queryForObject(LeaseQueries.QRY_LEASE_COUNT.value(), Integer.class, snapshotDate);
+        if (existing != null && existing > 0) {
+            if (!loadCheckpointStore.holdsLoadOf(snapshotDate)
+                    && restart(snapshotDate, totalEntities, shardCount, owner, leaseMillis)) {
+                return open(snapshotDate, owner, prepare);
+            }
+            return takeOverStaleInit(snapshotDate, owner, leaseMillis, prepare);
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertShards(snapshotDate, totalEntities, shardCount,
+                    owner, new Timestamp(System.currentTimeMillis() + leaseMillis), 0));
+        } catch (DuplicateKeyException e) {
+            log.info("Shards for " + snapshotDate + " were created by another instance");
+            return false;
+        }
+        return open(snapshotDate, owner, prepare);
+    }
+
+    // Replaces the rows an earlier run of the date left behind with INIT rows of a new run.
+    // Moving shard 0 out of its current state is the compare-and-set: one instance wins, the
+    // others find it INIT and wait for the shards to open.
+    private boolean restart(String snapshotDate, int totalEntities, int shardCount, String owner, long leaseMillis) {
+        List<Integer> firstEpoch = jdbcTemplate.queryForList(LeaseQueries.QRY_LEASE_FIRST_EPOCH.value(), Integer.class,
+                snapshotDate);
+        if (firstEpoch.isEmpty()) {
+            return false;
+        }
+        Timestamp leaseUntil = new Timestamp(System.currentTimeMillis() + leaseMillis);
+        Boolean restarted = transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(LeaseQueries.QRY_LEASE_RESTART_FIRST.value(), owner, leaseUntil, snapshotDate,
+                    firstEpoch.get(0)) != 1) {
+                return false;
+            }
+            Integer maxEpoch = jdbcTemplate.queryForObject(LeaseQueries.QRY_LEASE_MAX_EPOCH.value(), Integer.class,
+                    snapshotDate);
+            jdbcTemplate.update(LeaseQueries.QRY_LEASE_DELETE.value(), snapshotDate);
+            // Writers of the earlier run still hold lower epochs; their fences no longer match
+            insertShards(snapshotDate, totalEntities, shardCount, owner, leaseUntil, maxEpoch == null ? 0 : maxEpoch + 1);
+            return true;
+        });
+        if (Boolean.TRUE.equals(restarted)) {
+            log.info("Shards of " + snapshotDate + " belonged to an earlier load whose rows are gone, "
+                    + owner + " starts a new run");
+            return true;
+        }
+        return false;
+    }
+
+    private void insertShards(String snapshotDate, int totalEntities, int shardCount, String owner,
+                              Timestamp leaseUntil, int epoch) {
+        int shards = Math.max(1, Math.min(shardCount, Math.max(1, totalEntities)));
+        for (int shardId = 0; shardId < shards; shardId++) {
+            int first = (int) ((long) totalEntities * shardId / shards);
+            int end = (int) ((long) totalEntities * (shardId + 1) / shards);
+            jdbcTemplate.update(LeaseQueries.QRY_LEASE_INSERT.value(), snapshotDate, shardId, first, end,
+                    STATUS_INIT, owner, leaseUntil, epoch);
+        }
+    }
+
+    // Takes over shards still INIT after their creator's lease ran out. Shard 0 carries the
+    // lease, so only one instance can win it.
+    public boolean takeOverStaleInit(String snapshotDate, String owner, long leaseMillis, Runnable prepare) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp leaseUntil = new Timestamp(now.getTime() + leaseMillis);
+        if (jdbcTemplate.update(LeaseQueries.QRY_LEASE_INIT_TAKEOVER.value(), owner, leaseUntil, snapshotDate, now) != 1) {
+            return false;
+        }
+        log.warning("Shards of " + snapshotDate + " were never opened by the instance that created them, "
+                + owner + " takes over");
+        return open(snapshotDate, owner, prepare);
+    }
+
+    // Opens the shards only while this instance still holds shard 0, so an initialiser whose
+    // lease was taken over does not open shards behind the new one's prepare
+    private boolean open(String snapshotDate, String owner, Runnable prepare) {
+        prepare.run();
+        Integer opened = transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(LeaseQueries.QRY_LEASE_OPEN_FIRST.value(), snapshotDate, owner) != 1) {
+                return null;
+            }
+            return 1 + jdbcTemplate.update(LeaseQueries.QRY_LEASE_OPEN.value(), snapshotDate);
+        });
+        if (opened == null) {
+            log.warning("Opening the shards of " + snapshotDate + " was taken over by another instance");
+            return false;
+        }
+        log.info("Opened " + opened + " shards for snapshotDate " + snapshotDate);
+        return true;
+    }
+
+    public Shard claim(String snapshotDate, String owner, long leaseMillis) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Integer> candidates = jdbcTemplate.queryForList(LeaseQueries.QRY_LEASE_CANDIDATES.value(), Integer.class,
+                snapshotDate, now);
+
+        for (Integer shardId : candidates) {
+            Timestamp leaseUntil = new Timestamp(System.currentTimeMillis() + leaseMillis);
+            // Only one instance can move the row out of PENDING or an expired CLAIMED state
+            int claimed = jdbcTemplate.update(LeaseQueries.QRY_LEASE_CLAIM.value(), owner, leaseUntil, snapshotDate,
+                    shardId, now);
+            if (claimed == 1) {
+                return jdbcTemplate.queryForObject(LeaseQueries.QRY_LEASE_RANGE.value(),
+                        (rs, rowNum) -> new Shard(snapshotDate, shardId, rs.getInt("firstOrdinal"),
+                                rs.getInt("endOrdinal"), owner, rs.getInt("epoch")),
+                        snapshotDate, shardId);
+            }
+        }
+        return null;
+    }
+
+    public boolean heartbeat(Shard shard, long leaseMillis) {
+        Timestamp leaseUntil = new Timestamp(System.currentTimeMillis() + leaseMillis);
+        return jdbcTemplate.update(LeaseQueries.QRY_LEASE_HEARTBEAT.value(), leaseUntil, shard.snapshotDate,
+                shard.shardId, shard.owner, shard.epoch) == 1;
+    }
+
+    public boolean complete(Shard shard) {
+        return jdbcTemplate.update(LeaseQueries.QRY_LEASE_COMPLETE.value(), shard.snapshotDate, shard.shardId,
+                shard.owner, shard.epoch) == 1;
+    }
+
+    // Gives a failed shard back right away instead of waiting for the lease to expire
+    public void release(Shard shard) {
+        jdbcTemplate.update(LeaseQueries.QRY_LEASE_RELEASE.value(), shard.snapshotDate, shard.shardId,
+                shard.owner, shard.epoch);
+    }
+
+    public int remaining(String snapshotDate) {
+        Integer remaining = jdbcTemplate.queryForObject(LeaseQueries.QRY_LEASE_REMAINING.value(), Integer.class, snapshotDate);
+        return remaining == null ? 0 : remaining;
+    }
+}
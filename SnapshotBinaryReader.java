@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.Model.Registration;
+import com.socgen.riskweb.Model.ResponseInternal;
+import com.socgen.riskweb.Model.SubBookingEntity;
+
+// Reads a SnapshotBinaryWriter snapshot in place over a ByteBuffer: a mapped file, or a
+// MemorySegment through asByteBuffer(). Entities are addressed by position; fields are read
+// with absolute gets and strings are decoded only when asked for, once per dictionary entry.
+// Safe for concurrent readers.
+public final class SnapshotBinaryReader {
+
+    // (codeRef, subbookingIdRef) per WK_TSMAESTRO row, as PrimaryRoleFlattener would emit them
+    public interface RowVisitor {
+        void row(int entity, int codeRef, int subbookingIdRef);
+    }
+
+    private final ByteBuffer buffer;
+    private final int entityCount;
+    private final int dictionaryCount;
+    private final int dictionaryOffset;
+    private final int entitiesOffset;
+    private final boolean sorted;
+    private final String[] strings;
+
+    private SnapshotBinaryReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < SnapshotBinaryWriter.HEADER_SIZE || buffer.getInt(0) != SnapshotBinaryWriter.MAGIC) {
+            throw new IOException("Not a Maestro binary snapshot");
+        }
+        short version = buffer.getShort(4);
+        if (version != SnapshotBinaryWriter.VERSION) {
+            throw new IOException("Unsupported Maestro binary snapshot version " + version);
+        }
+        this.sorted = (buffer.getShort(6) & SnapshotBinaryWriter.FLAG_SORTED) != 0;
+        this.entityCount = buffer.getInt(8);
+        this.dictionaryCount = buffer.getInt(12);
+        this.dictionaryOffset = buffer.getInt(16);
+        this.entitiesOffset = buffer.getInt(20);
+        if (buffer.getLong(24) != buffer.limit()) {
+            throw new IOException("Truncated Maestro binary snapshot: expected " + buffer.getLong(24)
+                    + " bytes, got " + buffer.limit());
+        }
+        this.strings = new String[dictionaryCount];
+    }
+
+    public static SnapshotBinaryReader wrap(ByteBuffer buffer) throws IOException {
+        return new SnapshotBinaryReader(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    public static SnapshotBinaryReader map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int entityCount() {
+        return entityCount;
+    }
+
+    public int dictionarySize() {
+        return dictionaryCount;
+    }
+
+    // -1 when the entityId is not numeric
+    public long bdrid(int entity) {
+        return buffer.getLong(recordOffset(entity));
+    }
+
+    public String entityId(int entity) {
+        int offset = recordOffset(entity);
+        long bdrid = buffer.getLong(offset);
+        int digits = buffer.get(offset + Long.BYTES);
+        if (digits == 0) {
+            return string(readVarint(new int[]{offset + Long.BYTES + 1}));
+        }
+        String value = Long.toString(bdrid);
+        StringBuilder padded = new StringBuilder(digits);
+        for (int i = value.length(); i < digits; i++) {
+            padded.append('0');
+        }
+        return padded.append(value).toString();
+    }
+
+    // Position of the first entity with this BDRID, or -1
+    public int find(long bdrid) {
+        if (!sorted) {
+            for (int entity = 0; entity < entityCount; entity++) {
+                if (bdrid(entity) == bdrid) {
+                    return entity;
+                }
+            }
+            return -1;
+        }
+        int low = 0;
+        int high = entityCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long key = sortKey(mid);
+            if (key < bdrid) {
+                low = mid + 1;
+            } else {
+                if (key == bdrid) {
+                    found = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // Dictionary string for a ref; 0 is null
+    public String string(int ref) {
+        if (ref == 0) {
+            return null;
+        }
+        String value = strings[ref - 1];
+        if (value == null) {
+            int[] position = {dictionaryOffset + buffer.getInt(dictionaryIndexOffset() + (ref - 1) * Integer.BYTES)};
+            int length = readVarint(position);
+            byte[] utf8 = new byte[length];
+            buffer.get(position[0], utf8);
+            value = new String(utf8, StandardCharsets.UTF_8);
+            strings[ref - 1] = value;
+        }
+        return value;
+    }
+
+    public int rowCount(int entity) {
+        int[] counter = new int[1];
+        forEachRow(entity, (e, codeRef, subbookingIdRef) -> counter[0]++);
+        return counter[0];
+    }
+
+    // Walks the entity's rows without building objects
+    public void forEachRow(int entity, RowVisitor visitor) {
+        int[] position = {registrationsOffset(entity)};
+        int registrations = readVarint(position) - 1;
+        for (int r = 0; r < registrations; r++) {
+            int codeRef = readVarint(position);
+            readVarint(position); // label
+            readVarint(position); // value
+            int subBookings = readVarint(position) - 1;
+            if (subBookings <= 0) {
+                visitor.row(entity, codeRef, 0);
+            }
+            for (int s = 0; s < subBookings; s++) {
+                visitor.row(entity, codeRef, readVarint(position));
+                readVarint(position); // subbookingName
+                readVarint(position); // value
+            }
+        }
+    }
+
+    public InternalRegistrations materialize(int entity) {
+        InternalRegistrations internalReg = new InternalRegistrations();
+        internalReg.setEntityId(entityId(entity));
+
+        int[] position = {registrationsOffset(entity)};
+        int registrations = readVarint(position) - 1;
+        if (registrations < 0) {
+            return internalReg;
+        }
+        List<Registration> regs = new ArrayList<>(registrations);
+        for (int r = 0; r < registrations; r++) {
+            Registration reg = new Registration();
+            reg.setCode(string(readVarint(position)));
+            reg.setLabel(string(readVarint(position)));
+            reg.setValue(string(readVarint(position)));
+            int subBookings = readVarint(position) - 1;
+            if (subBookings >= 0) {
+                List<SubBookingEntity> subBookingEntities = new ArrayList<>(subBookings);
+                for (int s = 0; s < subBookings; s++) {
+                    SubBookingEntity subBooking = new SubBookingEntity();
+                    subBooking.setSubbookingId(string(readVarint(position)));
+                    subBooking.setSubbookingName(string(readVarint(position)));
+                    subBooking.setValue(string(readVarint(position)));
+                    subBookingEntities.add(subBooking);
+                }
+                reg.setSubBookingEntities(subBookingEntities);
+            }
+            regs.add(reg);
+        }
+        internalReg.setRegistrations(regs);
+        return internalReg;
+    }
+
+    public ResponseInternal materializeAll() {
+        List<InternalRegistrations> internalRegistrations = new ArrayList<>(entityCount);
+        for (int entity = 0; entity < entityCount; entity++) {
+            internalRegistrations.add(materialize(entity));
+        }
+        ResponseInternal snapshot = new ResponseInternal();
+        snapshot.setInternalRegistrations(internalRegistrations);
+        return snapshot;
+    }
+
+    private long sortKey(int entity) {
+        long bdrid = bdrid(entity);
+        return bdrid >= 0 ? bdrid : Long.MAX_VALUE;
+    }
+
+    private int recordOffset(int entity) {
+        return entitiesOffset + buffer.getInt(SnapshotBinaryWriter.HEADER_SIZE + entity * Integer.BYTES);
+    }
+
+    private int dictionaryIndexOffset() {
+        return SnapshotBinaryWriter.HEADER_SIZE + entityCount * Integer.BYTES;
+    }
+
+    private int registrationsOffset(int entity) {
+        int offset = recordOffset(entity) + Long.BYTES;
+        int[] position = {offset + 1};
+        if (buffer.get(offset) == 0) {
+            readVarint(position); // entityId ref
+        }
+        return position[0];
+    }
+
+    private int readVarint(int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.socgen.riskweb.Model.InternalRegistrations;
+import com.socgen.riskweb.Model.Registration;
+import com.socgen.riskweb.Model.ResponseInternal;
+import com.socgen.riskweb.Model.SubBookingEntity;
+
+// Encodes a snapshot in the compact binary layout read by SnapshotBinaryReader. Little endian:
+//
+//   header        int magic "MSNP", short version, short flags, int entityCount,
+//                 int dictionaryCount, int dictionaryOffset, int entitiesOffset, long totalLength
+//   entity index  int offset of each entity record, relative to entitiesOffset
+//   dict index    int offset of each string, relative to dictionaryOffset
+//   dictionary    varint length + UTF-8 bytes per distinct string
+//   entities      long bdrid, byte digits (0 when the entityId is not numeric: varint ref follows),
+//                 varint registrations + 1 (0 = null), per registration varint code, label and
+//                 value refs and varint subBookingEntities + 1, per subbooking varint subbookingId,
+//                 subbookingName and value refs
+//
+// A string ref is its dictionary id + 1, 0 standing for null. Entities are written in BDRID
+// order (flag SORTED) so readers can binary search them.
+public final class SnapshotBinaryWriter {
+
+    static final int MAGIC = 0x504E534D;
+    static final short VERSION = 1;
+    static final short FLAG_SORTED = 1;
+    static final int HEADER_SIZE = 32;
+
+    // Up to 18 digits always fits in a long
+    static final int MAX_NUMERIC_DIGITS = 18;
+
+    private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+    private ByteBuffer entities = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    private SnapshotBinaryWriter() {
+    }
+
+    public static long write(ResponseInternal snapshot, Path target) throws IOException {
+        ByteBuffer encoded = encode(snapshot);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (encoded.hasRemaining()) {
+                channel.write(encoded);
+            }
+        }
+        return encoded.limit();
+    }
+
+    public static ByteBuffer encode(ResponseInternal snapshot) {
+        List<InternalRegistrations> sorted = new ArrayList<>();
+        if (snapshot != null && snapshot.getInternalRegistrations() != null) {
+            sorted.addAll(snapshot.getInternalRegistrations());
+        }
+        sorted.sort(Comparator.comparingLong(SnapshotBinaryWriter::sortKey));
+        return new SnapshotBinaryWriter().encode(sorted);
+    }
+
+    private ByteBuffer encode(List<InternalRegistrations> sorted) {
+        int[] entityOffsets = new int[sorted.size()];
+        for (int entity = 0; entity < sorted.size(); entity++) {
+            entityOffsets[entity] = entities.position();
+            writeEntity(sorted.get(entity));
+        }
+
+        List<byte[]> strings = new ArrayList<>(dictionary.size());
+        int dictionaryBytes = 0;
+        for (String value : dictionary.keySet()) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            strings.add(utf8);
+            dictionaryBytes += varintSize(utf8.length) + utf8.length;
+        }
+
+        int dictionaryIndexOffset = HEADER_SIZE + entityOffsets.length * Integer.BYTES;
+        int dictionaryOffset = dictionaryIndexOffset + strings.size() * Integer.BYTES;
+        int entitiesOffset = dictionaryOffset + dictionaryBytes;
+        int totalLength = entitiesOffset + entities.position();
+
+        ByteBuffer out = ByteBuffer.allocate(totalLength).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putShort(VERSION).putShort(FLAG_SORTED)
+                .putInt(entityOffsets.length).putInt(strings.size())
+                .putInt(dictionaryOffset).putInt(entitiesOffset).putLong(totalLength);
+        for (int offset : entityOffsets) {
+            out.putInt(offset);
+        }
+        int stringOffset = 0;
+        for (byte[] utf8 : strings) {
+            out.putInt(stringOffset);
+            stringOffset += varintSize(utf8.length) + utf8.length;
+        }
+        for (byte[] utf8 : strings) {
+            putVarint(out, utf8.length);
+            out.put(utf8);
+        }
+        entities.flip();
+        out.put(entities);
+        out.flip();
+        return out;
+    }
+
+    private void writeEntity(InternalRegistrations internalReg) {
+        String entityId = internalReg.getEntityId();
+        long bdrid = numericKey(entityId);
+        ensureCapacity(Long.BYTES + 1);
+        entities.putLong(bdrid);
+        if (bdrid >= 0) {
+            entities.put((byte) entityId.length());
+        } else {
+            entities.put((byte) 0);
+            writeRef(entityId);
+        }
+
+        List<Registration> registrations = internalReg.getRegistrations();
+        writeVarint(registrations == null ? 0 : registrations.size() + 1);
+        if (registrations == null) {
+            return;
+        }
+        for (Registration reg : registrations) {
+            writeRef(reg.getCode());
+            writeRef(reg.getLabel());
+            writeRef(reg.getValue());
+            List<SubBookingEntity> subBookingEntities = reg.getSubBookingEntities();
+            writeVarint(subBookingEntities == null ? 0 : subBookingEntities.size() + 1);
+            if (subBookingEntities == null) {
+                continue;
+            }
+            for (SubBookingEntity subBooking : subBookingEntities) {
+                writeRef(subBooking.getSubbookingId());
+                writeRef(subBooking.getSubbookingName());
+                writeRef(subBooking.getValue());
+            }
+        }
+    }
+
+    private void writeRef(String value) {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        Integer id = dictionary.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(value, id);
+        }
+        writeVarint(id + 1);
+    }
+
+    private void writeVarint(int value) {
+        ensureCapacity(5);
+        putVarint(entities, value);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (entities.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(entities.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            entities.flip();
+            grown.put(entities);
+            entities = grown;
+        }
+    }
+
+    // Non-numeric entityIds sort after every BDRID
+    private static long sortKey(InternalRegistrations internalReg) {
+        long bdrid = numericKey(internalReg.getEntityId());
+        return bdrid >= 0 ? bdrid : Long.MAX_VALUE;
+    }
+
+    // The entityId as a long when it is plain decimal digits, -1 otherwise
+    static long numericKey(String entityId) {
+        if (entityId == null || entityId.isEmpty() || entityId.length() > MAX_NUMERIC_DIGITS) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < entityId.length(); i++) {
+            char c = entityId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,46 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+// The Maestro snapshotDate to load: today in maestro.snapshot.zone, minus maestro.snapshot.lagDays
+// when the day's snapshot is published late. maestro.snapshot.date pins a fixed date instead.
+@Component("snapshotDates")
+public class SnapshotDates {
+
+    @Value("${maestro.snapshot.date:}")
+    private String pinnedDate;
+
+    @Value("${maestro.snapshot.lagDays:0}")
+    private int lagDays;
+
+    @Value("${maestro.snapshot.zone:#{T(java.time.ZoneId).systemDefault().getId()}}")
+    private String zone;
+
+    public LocalDate current() {
+        if (!pinnedDate.isEmpty()) {
+            return LocalDate.parse(pinnedDate);
+        }
+        return LocalDate.now(ZoneId.of(zone)).minusDays(lagDays);
+    }
+
+    // The query string the Maestro relationship API expects
+    public static String queryFor(LocalDate snapshotDate) {
+        return "?snapshotDate=" + snapshotDate;
+    }
+
+    // Every date from first to last, both included
+    public static List<LocalDate> range(LocalDate first, LocalDate last) {
+        if (last.isBefore(first)) {
+            throw new IllegalArgumentException("Empty date range " + first + " .. " + last);
+        }
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            dates.add(date);
+        }
+        return dates;
+    }
+}
@@ -0,0 +1,60 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Monotonic counter of committed WK_TSMAESTRO loads. Readers tag what they cache with the
+// generation they read under; bumping it invalidates every cached entry at once. Loads
+// commit chunk by chunk, so while one is writing the table readers must not cache at all.
+@Component
+public class SnapshotGeneration {
+
+    private static final Logger log = Logger.getLogger(SnapshotGeneration.class.getName());
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger loadsWriting = new AtomicInteger();
+
+    public long current() {
+        return generation.get();
+    }
+
+    // Read after current(): a load that starts later bumps the generation the caller holds
+    public boolean loadInProgress() {
+        return loadsWriting.get() > 0;
+    }
+
+    // Around a load's writes to WK_TSMAESTRO (LoadGate's table permit). Both ends bump, so
+    // nothing read before or during the load is served afterwards.
+    public void loadStarted() {
+        loadsWriting.incrementAndGet();
+        bump();
+    }
+
+    public void loadFinished() {
+        loadsWriting.decrementAndGet();
+        bump();
+    }
+
+    // Bumps once the surrounding transaction commits, or right away outside a transaction
+    public void bumpAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump();
+                }
+            });
+        } else {
+            bump();
+        }
+    }
+
+    private void bump() {
+        log.info("WK_TSMAESTRO generation is now " + generation.incrementAndGet());
+    }
+}
@@ -0,0 +1,300 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+// Spills the Maestro snapshot to disk instead of holding it on heap:
+// the compressed body is streamed to <spillDir>/<tag>.raw, inflated to <tag>.json,
+// and the JSON is handed back as an InputStream over memory-mapped regions.
+@Component("snapshotSpillDownloader")
+public class SnapshotSpillDownloader {
+
+    private static final Logger log = Logger.getLogger(SnapshotSpillDownloader.class.getName());
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // A single MappedByteBuffer is limited to Integer.MAX_VALUE bytes
+    private static final long MAX_MAPPED_REGION = Integer.MAX_VALUE;
+
+    @Value("${maestro.spill.dir:${java.io.tmpdir}}")
+    private String spillDir;
+
+    // What has been received so far and how to ask for the rest. The caller keeps one per
+    // snapshot across its retries, so a retried download resumes instead of starting over.
+    public static final class Transfer {
+        private final String tag;
+        private long written;
+        private long totalLength = -1;
+        private String etag;
+        private boolean acceptRanges;
+
+        public Transfer(String tag) {
+            this.tag = tag;
+        }
+
+        // Only a strong ETag proves a later response is still the same body
+        private boolean resumable() {
+            return written > 0 && acceptRanges && etag != null;
+        }
+
+        private void restart() {
+            written = 0;
+            etag = null;
+        }
+    }
+
+    public static class SpillResult {
+        private final int status;
+        private final Path rawFile;
+        private final long bytesWritten;
+
+        SpillResult(int status, Path rawFile, long bytesWritten) {
+            this.status = status;
+            this.rawFile = rawFile;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Path getRawFile() {
+            return rawFile;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+
+    // One attempt. Retrying is the caller's job (MaestroResilience); a failed or short transfer
+    // throws and leaves the transfer and <tag>.raw so the next attempt asks for the rest only,
+    // with If-Range on the stored ETag so a changed body comes back whole.
+    public SpillResult download(RestTemplate restTemplate, String url, HttpHeaders headers, Transfer transfer) throws IOException {
+        Path directory = Paths.get(spillDir);
+        Files.createDirectories(directory);
+        Path rawFile = directory.resolve(transfer.tag + ".raw");
+
+        if (!transfer.resumable() || !Files.exists(rawFile) || Files.size(rawFile) < transfer.written) {
+            transfer.restart();
+        } else {
+            log.info("Resuming " + rawFile + " from byte " + transfer.written);
+        }
+        try {
+            Integer status = restTemplate.execute(url, HttpMethod.GET,
+                    request -> {
+                        request.getHeaders().putAll(headers);
+                        if (transfer.written > 0) {
+                            request.getHeaders().set(HttpHeaders.RANGE, "bytes=" + transfer.written + "-");
+                            request.getHeaders().set(HttpHeaders.IF_RANGE, transfer.etag);
+                        }
+                    },
+                    response -> receive(response, rawFile, transfer));
+
+            if (status == null) {
+                return null;
+            }
+            if (status != 200 && status != 206) {
+                return new SpillResult(status, null, 0);
+            }
+            if (!verifyComplete(rawFile, transfer)) {
+                // The body ended early without an error, e.g. a proxy closed the connection cleanly
+                if (transfer.written > transfer.totalLength) {
+                    transfer.restart();
+                }
+                throw new IOException("Transfer ended at byte " + transfer.written + " of " + transfer.totalLength);
+            }
+            log.info("Spilled " + transfer.written + " compressed bytes to " + rawFile);
+            return new SpillResult(200, rawFile, transfer.written);
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode().value() == 416) {
+                // The server cannot serve the rest of this body; the next attempt starts over
+                long from = transfer.written;
+                transfer.restart();
+                throw new IOException("Range from byte " + from + " rejected", e);
+            }
+            throw e;
+        } catch (ResourceAccessException e) {
+            log.warning("Transfer interrupted (" + e.getMessage() + ") at byte " + transfer.written + " of " + rawFile);
+            throw e;
+        }
+    }
+
+    private Integer receive(ClientHttpResponse response, Path rawFile, Transfer state) throws IOException {
+        int status = response.getStatusCode().value();
+        HttpHeaders responseHeaders = response.getHeaders();
+
+        if (status == 206) {
+            // Content-Range: bytes <start>-<end>/<total>
+            String contentRange = responseHeaders.getFirst(HttpHeaders.CONTENT_RANGE);
+            long start = parseRangeStart(contentRange);
+            if (start != state.written) {
+                state.acceptRanges = false;
+                throw new IOException("Server resumed at byte " + start + " instead of " + state.written);
+            }
+            state.totalLength = parseRangeTotal(contentRange);
+        } else if (status == 200) {
+            // Either the first request, or the entity changed and If-Range returned the full body
+            state.written = 0;
+            state.acceptRanges = "bytes".equalsIgnoreCase(responseHeaders.getFirst(HttpHeaders.ACCEPT_RANGES));
+            String etag = responseHeaders.getETag();
+            state.etag = etag != null && !etag.startsWith("W/") ? etag : null;
+            state.totalLength = responseHeaders.getContentLength();
+        } else {
+            return status;
+        }
+
+        try (ReadableByteChannel in = Channels.newChannel(response.getBody());
+             FileChannel out = FileChannel.open(rawFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (status == 200) {
+                out.truncate(0);
+            }
+            long count;
+            // Count every chunk as it lands so an interrupted transfer knows where to resume
+            while ((count = out.transferFrom(in, state.written, COPY_BUFFER_SIZE)) > 0) {
+                state.written += count;
+            }
+        }
+        return status;
+    }
+
+    // False when fewer (or more) bytes arrived than the server announced
+    private static boolean verifyComplete(Path rawFile, Transfer state) throws IOException {
+        try (FileChannel out = FileChannel.open(rawFile, StandardOpenOption.WRITE)) {
+            // Drop any tail a failed chunk may have left behind
+            out.truncate(state.written);
+        }
+        return state.totalLength < 0 || state.written == state.totalLength;
+    }
+
+    private static long parseRangeStart(String contentRange) throws IOException {
+        try {
+            String range = contentRange.substring(contentRange.indexOf(' ') + 1);
+            return Long.parseLong(range.substring(0, range.indexOf('-')));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid Content-Range: " + contentRange, e);
+        }
+    }
+
+    private static long parseRangeTotal(String contentRange) throws IOException {
+        try {
+            String total = contentRange.substring(contentRange.indexOf('/') + 1);
+            return "*".equals(total) ? -1 : Long.parseLong(total);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid Content-Range: " + contentRange, e);
+        }
+    }
+
+    // Same fallback order RestClientUtility used to apply in memory: GZIP first, then raw deflate, then the bytes as they are
+    public Path decompressToFile(Path rawFile) throws IOException {
+        Path jsonFile = siblingWithExtension(rawFile, ".json");
+
+        // The raw stream gets its own resource so it is closed even when the GZIP header read fails
+        try (InputStream raw = Files.newInputStream(rawFile);
+             InputStream in = new GZIPInputStream(raw, COPY_BUFFER_SIZE)) {
+            copyToFile(in, jsonFile);
+            return jsonFile;
+        } catch (ZipException e) {
+            log.warning("GZIP decompression failed, trying Inflater: " + e.getMessage());
+        }
+
+        Inflater inflater = new Inflater(true);
+        try (InputStream raw = Files.newInputStream(rawFile);
+             InputStream in = new InflaterInputStream(raw, inflater, COPY_BUFFER_SIZE)) {
+            copyToFile(in, jsonFile);
+            return jsonFile;
+        } catch (ZipException e) {
+            log.severe("Both decompression methods failed. Using original data: " + e.getMessage());
+            Files.deleteIfExists(jsonFile);
+            return rawFile;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public InputStream openMapped(Path jsonFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(jsonFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<InputStream> regions = new ArrayList<>();
+            for (long position = 0; position < size; position += MAX_MAPPED_REGION) {
+                long length = Math.min(MAX_MAPPED_REGION, size - position);
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                regions.add(new ByteBufferBackedInputStream(buffer));
+            }
+            if (regions.isEmpty()) {
+                regions.add(new ByteBufferBackedInputStream(ByteBuffer.allocate(0)));
+            }
+            return new SequenceInputStream(Collections.enumeration(regions));
+        }
+    }
+
+    // Whole file as one mapping for random access, or null when it exceeds a single region
+    public ByteBuffer mapWhole(Path jsonFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(jsonFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_MAPPED_REGION) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    public void cleanup(Path... files) {
+        for (Path file : files) {
+            if (file == null) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warning("Could not delete spill file " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void copyToFile(InputStream in, Path target) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long written = 0;
+            long count;
+            while ((count = out.transferFrom(source, written, COPY_BUFFER_SIZE)) > 0) {
+                written += count;
+            }
+        }
+    }
+
+    private static Path siblingWithExtension(Path file, String extension) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return file.resolveSibling(base + extension);
+    }
+}
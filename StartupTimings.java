@@ -0,0 +1,84 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+// Startup benchmark for the load job: JVM uptime when the context is ready and when the first
+// Maestro request goes out. With maestro.startup.benchmarkFile set, every run appends a CSV
+// line tagged with whether AOT initializers and a CDS archive were in use, so plain, AOT and
+// AOT+CDS runs can be compared over time.
+@Component("startupTimings")
+public class StartupTimings implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger log = Logger.getLogger(StartupTimings.class.getName());
+
+    private static final String CSV_HEADER = "timestamp,readyMs,firstRequestMs,aot,cds";
+
+    @Value("${maestro.startup.benchmarkFile:}")
+    private String benchmarkFile;
+
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+    private volatile long readyMillis = -1;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        log.info("Context ready " + readyMillis + " ms after JVM start (aot=" + aotEnabled() + ", cds=" + cdsArchive() + ")");
+    }
+
+    // Called right before the first Maestro call of the run; later calls are ignored
+    public void markFirstRequest() {
+        if (!firstRequestSeen.compareAndSet(false, true)) {
+            return;
+        }
+        long firstRequestMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        log.info("First Maestro request " + firstRequestMillis + " ms after JVM start");
+        if (!benchmarkFile.isEmpty()) {
+            record(firstRequestMillis);
+        }
+    }
+
+    private void record(long firstRequestMillis) {
+        Path file = Paths.get(benchmarkFile);
+        String line = Instant.now() + "," + readyMillis + "," + firstRequestMillis + ","
+                + aotEnabled() + "," + cdsArchive() + System.lineSeparator();
+        try {
+            if (Files.notExists(file)) {
+                Files.write(file, (CSV_HEADER + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.warning("Could not append startup timings to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean aotEnabled() {
+        return Boolean.getBoolean("spring.aot.enabled");
+    }
+
+    // Name of the AppCDS archive the JVM was started with, "none" otherwise
+    private static String cdsArchive() {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        List<String> arguments = runtime.getInputArguments();
+        for (String argument : arguments) {
+            if (argument.startsWith("-XX:SharedArchiveFile=")) {
+                return Paths.get(argument.substring("-XX:SharedArchiveFile=".length())).getFileName().toString();
+            }
+        }
+        return "none";
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+// Single pass over a decoded Maestro document that locates every element of each
+// "internalRegistrations" array without parsing it, so the elements can be handed to
+// several parsers at once. Works on 64-byte blocks the way simdjson's stage 1 does:
+// a Classifier turns a block into quote, backslash and bracket bitmasks, escapes and
+// string interiors are resolved with bit arithmetic, and only the brackets outside
+// strings are visited one by one. Field names are checked by looking back from '['.
+public final class StructuralScanner {
+
+    private static final Logger log = Logger.getLogger(StructuralScanner.class.getName());
+
+    private static final int BLOCK = 64;
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    private static final byte[] ARRAY_FIELD = "internalRegistrations".getBytes(StandardCharsets.US_ASCII);
+
+    private static final String VECTOR_CLASSIFIER = "VectorStructuralClassifier";
+
+    // Fills masks[QUOTES], masks[BACKSLASHES] and masks[BRACKETS] for the 64 bytes at
+    // data[offset]; bit i stands for data[offset + i]. Brackets are { } [ ]
+    public interface Classifier {
+        int QUOTES = 0;
+        int BACKSLASHES = 1;
+        int BRACKETS = 2;
+
+        void classify(byte[] data, int offset, long[] masks);
+    }
+
+    static final class ScalarClassifier implements Classifier {
+        @Override
+        public void classify(byte[] data, int offset, long[] masks) {
+            long quotes = 0;
+            long backslashes = 0;
+            long brackets = 0;
+            for (int i = 0; i < BLOCK; i++) {
+                byte b = data[offset + i];
+                long bit = 1L << i;
+                if (b == '"') {
+                    quotes |= bit;
+                } else if (b == '\\') {
+                    backslashes |= bit;
+                } else {
+                    // '[' | 0x20 == '{' and ']' | 0x20 == '}'
+                    int folded = b | 0x20;
+                    if (folded == '{' || folded == '}') {
+                        brackets |= bit;
+                    }
+                }
+            }
+            masks[QUOTES] = quotes;
+            masks[BACKSLASHES] = backslashes;
+            masks[BRACKETS] = brackets;
+        }
+    }
+
+    // The Vector API classifier needs the jdk.incubator.vector module (--add-modules) and the
+    // separately compiled vector/ sources on the classpath; without either the scalar one is used
+    public static Classifier bestClassifier() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (Classifier) Class.forName(VECTOR_CLASSIFIER).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warning("Vector API present but " + VECTOR_CLASSIFIER + " unusable, scanning scalar: " + e);
+            }
+        }
+        return new ScalarClassifier();
+    }
+
+    // Byte ranges [start, end) of the array elements in document order; arrayStart(a) is the
+    // first element index of the a-th array and arrayStart(arrayCount()) == elementCount()
+    public static final class Index {
+        private int[] starts = new int[1024];
+        private int[] ends = new int[1024];
+        private int elementCount;
+        private int[] arrayStarts = new int[4];
+        private int arrayCount;
+
+        public int elementCount() {
+            return elementCount;
+        }
+
+        public int start(int element) {
+            return starts[element];
+        }
+
+        public int end(int element) {
+            return ends[element];
+        }
+
+        public int arrayCount() {
+            return arrayCount;
+        }
+
+        public int arrayStart(int array) {
+            return array == arrayCount ? elementCount : arrayStarts[array];
+        }
+
+        private void addArray() {
+            if (arrayCount == arrayStarts.length) {
+                arrayStarts = Arrays.copyOf(arrayStarts, arrayCount * 2);
+            }
+            arrayStarts[arrayCount++] = elementCount;
+        }
+
+        private void addElement(int start, int end) {
+            if (elementCount == starts.length) {
+                starts = Arrays.copyOf(starts, elementCount * 2);
+                ends = Arrays.copyOf(ends, elementCount * 2);
+            }
+            starts[elementCount] = start;
+            ends[elementCount] = end;
+            elementCount++;
+        }
+    }
+
+    private StructuralScanner() {
+    }
+
+    public static Index scan(ByteBuffer json, Classifier classifier) throws IOException {
+        Walker walker = new Walker(json);
+        int length = json.limit();
+        byte[] block = new byte[BLOCK];
+        long[] masks = new long[3];
+        long prevEscaped = 0;
+        long prevInString = 0;
+
+        for (int base = 0; base < length; base += BLOCK) {
+            int n = Math.min(BLOCK, length - base);
+            byte[] data = block;
+            int offset = 0;
+            if (n == BLOCK && json.hasArray()) {
+                // Heap buffers are classified in place; mapped ones go through the scratch block
+                data = json.array();
+                offset = json.arrayOffset() + base;
+            } else {
+                json.get(base, block, 0, n);
+                if (n < BLOCK) {
+                    Arrays.fill(block, n, BLOCK, (byte) ' ');
+                }
+            }
+            classifier.classify(data, offset, masks);
+
+            // Characters preceded by an odd run of backslashes are escaped
+            long backslashes = masks[Classifier.BACKSLASHES] & ~prevEscaped;
+            long followsEscape = (backslashes << 1) | prevEscaped;
+            long oddSequenceStarts = backslashes & ~EVEN_BITS & ~followsEscape;
+            long sequencesStartingOnEvenBits = oddSequenceStarts + backslashes;
+            prevEscaped = Long.compareUnsigned(sequencesStartingOnEvenBits, backslashes) < 0 ? 1 : 0;
+            long escaped = (EVEN_BITS ^ (sequencesStartingOnEvenBits << 1)) & followsEscape;
+
+            long quotes = masks[Classifier.QUOTES] & ~escaped;
+            // Opening quote up to (not including) the closing quote
+            long inString = prefixXor(quotes) ^ prevInString;
+            prevInString = inString >> 63;
+
+            long events = masks[Classifier.BRACKETS] & ~inString;
+            while (events != 0) {
+                int bit = Long.numberOfTrailingZeros(events);
+                events &= events - 1;
+                walker.visit(base + bit, data[offset + bit]);
+            }
+        }
+        return walker.finish(prevInString != 0);
+    }
+
+    private static long prefixXor(long bits) {
+        bits ^= bits << 1;
+        bits ^= bits << 2;
+        bits ^= bits << 4;
+        bits ^= bits << 8;
+        bits ^= bits << 16;
+        bits ^= bits << 32;
+        return bits;
+    }
+
+    // Tracks nesting over the bracket positions; mirrors InternalRegistrationsSplitter
+    private static final class Walker {
+        private final ByteBuffer json;
+        private final Index index = new Index();
+
+        private int depth;
+        private int arrayDepth = -1;
+        private int elementStart;
+
+        Walker(ByteBuffer json) {
+            this.json = json;
+        }
+
+        void visit(int position, byte c) throws IOException {
+            switch (c) {
+                case '[':
+                    depth++;
+                    if (arrayDepth < 0 && followsArrayField(position)) {
+                        arrayDepth = depth;
+                        index.addArray();
+                    }
+                    break;
+                case '{':
+                    depth++;
+                    if (arrayDepth >= 0 && depth == arrayDepth + 1) {
+                        elementStart = position;
+                    }
+                    break;
+                case '}':
+                    if (arrayDepth >= 0 && depth == arrayDepth + 1) {
+                        index.addElement(elementStart, position + 1);
+                    }
+                    depth--;
+                    break;
+                default:
+                    if (depth == arrayDepth) {
+                        arrayDepth = -1;
+                    }
+                    depth--;
+                    break;
+            }
+            if (depth < 0) {
+                throw new IOException("Malformed Maestro response: unbalanced '" + (char) c + "' at byte " + position);
+            }
+        }
+
+        Index finish(boolean inString) throws IOException {
+            if (depth != 0 || inString) {
+                throw new IOException("Truncated Maestro response: document ended inside "
+                        + (inString ? "a string" : "an open object or array"));
+            }
+            return index;
+        }
+
+        // True for '[' preceded by "internalRegistrations" : with optional whitespace. The '['
+        // is outside any string, so the colon and the closing quote before it are too; the
+        // opening quote is the first one back that is not escaped. The name is compared after
+        // its escapes are decoded, as the splitter's parser does
+        private boolean followsArrayField(int position) {
+            int p = skipWhitespaceBackwards(position - 1);
+            if (p < 0 || json.get(p) != ':') {
+                return false;
+            }
+            int closingQuote = skipWhitespaceBackwards(p - 1);
+            if (closingQuote < 0 || json.get(closingQuote) != '"') {
+                return false;
+            }
+            int openingQuote = closingQuote - 1;
+            while (openingQuote >= 0 && (json.get(openingQuote) != '"' || backslashesBefore(openingQuote) % 2 != 0)) {
+                openingQuote--;
+            }
+            return openingQuote >= 0 && isArrayField(openingQuote + 1, closingQuote);
+        }
+
+        private int backslashesBefore(int position) {
+            int backslashes = 0;
+            for (int i = position - 1; i >= 0 && json.get(i) == '\\'; i--) {
+                backslashes++;
+            }
+            return backslashes;
+        }
+
+        // Compares the raw name bytes [from, to) with ARRAY_FIELD, decoding unicode and
+        // one-character escapes. ARRAY_FIELD is ASCII, so any other byte is a mismatch
+        private boolean isArrayField(int from, int to) {
+            int matched = 0;
+            for (int i = from; i < to; i++) {
+                int c = json.get(i);
+                if (c == '\\') {
+                    if (++i >= to) {
+                        return false;
+                    }
+                    c = json.get(i);
+                    if (c == 'u') {
+                        if (i + 4 >= to) {
+                            return false;
+                        }
+                        c = 0;
+                        for (int k = 1; k <= 4; k++) {
+                            int digit = Character.digit(json.get(i + k), 16);
+                            if (digit < 0) {
+                                return false;
+                            }
+                            c = c * 16 + digit;
+                        }
+                        i += 4;
+                    } else if (c != '"' && c != '\\' && c != '/') {
+                        // \b \f \n \r \t are control characters, never part of ARRAY_FIELD
+                        return false;
+                    }
+                }
+                if (matched == ARRAY_FIELD.length || c != ARRAY_FIELD[matched]) {
+                    return false;
+                }
+                matched++;
+            }
+            return matched == ARRAY_FIELD.length;
+        }
+
+        private int skipWhitespaceBackwards(int p) {
+            while (p >= 0) {
+                byte b = json.get(p);
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    break;
+                }
+                p--;
+            }
+            return p;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Differential test of StructuralScanner against Jackson's tree model: for every document the
+// scanner must find the same internalRegistrations arrays as a walk of Jackson's tree, and
+// each element range it reports must parse to the element Jackson found there. Documents are
+// Maestro-shaped samples, hand-written edge cases and seeded random ones, scanned from heap,
+// offset and direct buffers with the scalar and the best available classifier.
+class StructuralScannerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<String> SAMPLES = List.of(
+            "{\"internalRegistrations\":[]}",
+            "{\"internalRegistrations\":[{\"entityId\":\"0001234567\",\"registrations\":[{\"code\":\"BDR\","
+                    + "\"subBookingEntities\":[{\"subbookingId\":\"42\"}]}]},{\"entityId\":\"0007654321\"}]}",
+            "{\"internalRegistrations\" \n:\t [ {\"entityId\":\"1\"} , {\"entityId\":\"2\"} ]}",
+            "[{\"internalRegistrations\":[{\"a\":1}]},{\"internalRegistrations\":[{\"b\":2},{\"c\":3}]}]",
+            // Non-object members are not elements
+            "{\"internalRegistrations\":[1,\"x\",[{\"nested\":true}],null,{\"entityId\":\"3\"}]}",
+            // Brackets, quotes and the field name inside strings
+            "{\"note\":\"\\\"internalRegistrations\\\":[{\\\"fake\\\":1}]\",\"internalRegistrations\":[{\"s\":\"}]{[\"}]}",
+            "{\"internalRegistrations\":[{\"s\":\"\\\\\"},{\"s\":\"\\\\\\\\\\\"]\"}]}",
+            "{\"\\u0069nternalRegistrations\":[{\"escapedName\":1}],\"x\":[\"internalRegistrations\"]}",
+            // A nested array of the same name inside an element belongs to that element
+            "{\"internalRegistrations\":[{\"internalRegistrations\":[{\"inner\":1}]}],\"page\":{\"internalRegistrations\":[{\"p\":2}]}}",
+            "{\"k\":\"\u00e9\u4e2d\ud83d\ude00\",\"internalRegistrations\":[{\"label\":\"\u00e9\u00e8\"}]}");
+
+    @Test
+    void matchesJacksonOnSamples() throws IOException {
+        for (String sample : SAMPLES) {
+            assertMatchesJackson(sample.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void matchesJacksonOnGeneratedDocuments() throws IOException {
+        Random random = new Random(20240611L);
+        for (int i = 0; i < 2000; i++) {
+            assertMatchesJackson(document(random).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void rejectsTruncatedDocuments() {
+        byte[] json = SAMPLES.get(1).getBytes(StandardCharsets.UTF_8);
+        for (int length : new int[] {1, 30, json.length / 2, json.length - 1}) {
+            ByteBuffer truncated = ByteBuffer.wrap(json, 0, length).slice();
+            assertThrows(IOException.class, () -> MAPPER.readTree(new String(json, 0, length, StandardCharsets.UTF_8)));
+            assertThrows(IOException.class, () -> StructuralScanner.scan(truncated, new StructuralScanner.ScalarClassifier()));
+        }
+        assertThrows(IOException.class,
+                () -> StructuralScanner.scan(ByteBuffer.wrap("{\"a\":1}}".getBytes(StandardCharsets.UTF_8)),
+                        new StructuralScanner.ScalarClassifier()));
+    }
+
+    private static void assertMatchesJackson(byte[] json) throws IOException {
+        List<List<JsonNode>> expected = new ArrayList<>();
+        collectArrays(MAPPER.readTree(json), expected);
+
+        for (StructuralScanner.Classifier classifier
+                : List.of(new StructuralScanner.ScalarClassifier(), StructuralScanner.bestClassifier())) {
+            for (ByteBuffer buffer : buffers(json)) {
+                StructuralScanner.Index index = StructuralScanner.scan(buffer, classifier);
+                String document = new String(json, StandardCharsets.UTF_8);
+                assertEquals(expected.size(), index.arrayCount(), document);
+                for (int array = 0; array < expected.size(); array++) {
+                    List<JsonNode> elements = expected.get(array);
+                    assertEquals(elements.size(), index.arrayStart(array + 1) - index.arrayStart(array), document);
+                    for (int i = 0; i < elements.size(); i++) {
+                        int element = index.arrayStart(array) + i;
+                        JsonNode scanned = MAPPER.readTree(json, index.start(element),
+                                index.end(element) - index.start(element));
+                        assertEquals(elements.get(i), scanned, document);
+                    }
+                }
+            }
+        }
+    }
+
+    // The object members of every internalRegistrations array outside another such array, in
+    // document order; what InternalRegistrationsSplitter hands to the parser
+    private static void collectArrays(JsonNode node, List<List<JsonNode>> arrays) {
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getKey().equals("internalRegistrations") && field.getValue().isArray()) {
+                    List<JsonNode> elements = new ArrayList<>();
+                    for (JsonNode element : field.getValue()) {
+                        if (element.isObject()) {
+                            elements.add(element);
+                        }
+                    }
+                    arrays.add(elements);
+                } else {
+                    collectArrays(field.getValue(), arrays);
+                }
+            }
+        } else if (node.isArray()) {
+            for (JsonNode element : node) {
+                collectArrays(element, arrays);
+            }
+        }
+    }
+
+    // Heap, heap at a non-zero array offset, and direct (the mapped spill file's case)
+    private static List<ByteBuffer> buffers(byte[] json) {
+        byte[] padded = new byte[json.length + 7];
+        System.arraycopy(json, 0, padded, 7, json.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(json.length);
+        direct.put(json).flip();
+        return List.of(ByteBuffer.wrap(json), ByteBuffer.wrap(padded, 7, json.length).slice(), direct);
+    }
+
+    private static String document(Random random) {
+        StringBuilder out = new StringBuilder("{");
+        Set<String> names = new HashSet<>();
+        int fields = 1 + random.nextInt(4);
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            if (random.nextInt(3) > 0) {
+                key(out, random, i == 0 ? "internalRegistrations" : "r" + i, names);
+                out.append('[');
+                int elements = random.nextInt(6);
+                for (int e = 0; e < elements; e++) {
+                    if (e > 0) {
+                        out.append(whitespace(random)).append(',').append(whitespace(random));
+                    }
+                    if (random.nextInt(8) == 0) {
+                        value(out, random, 2);
+                    } else {
+                        object(out, random, 3);
+                    }
+                }
+                out.append(']');
+            } else {
+                key(out, random, "f" + i, names);
+                value(out, random, 3);
+            }
+        }
+        return out.append('}').toString();
+    }
+
+    // The given name, or now and then the name of the arrays under test. Names are unique per
+    // object, Jackson's tree would keep only the last of two equal ones; some are escaped
+    private static void key(StringBuilder out, Random random, String name, Set<String> names) {
+        if (random.nextInt(4) == 0 && !names.contains("internalRegistrations")) {
+            name = "internalRegistrations";
+        }
+        if (!names.add(name)) {
+            name = name + "_" + names.size();
+            names.add(name);
+        }
+        string(out, name, random, true);
+        out.append(whitespace(random)).append(':').append(whitespace(random));
+    }
+
+    private static void object(StringBuilder out, Random random, int depth) {
+        out.append('{');
+        Set<String> names = new HashSet<>();
+        int fields = random.nextInt(4);
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            key(out, random, "k" + i, names);
+            value(out, random, depth - 1);
+        }
+        out.append('}');
+    }
+
+    private static void value(StringBuilder out, Random random, int depth) {
+        int kind = random.nextInt(depth > 0 ? 8 : 5);
+        switch (kind) {
+            case 0:
+                out.append(random.nextInt(100000) - 50000);
+                break;
+            case 1:
+                out.append(random.nextBoolean() ? "true" : random.nextBoolean() ? "false" : "null");
+                break;
+            case 2:
+            case 3:
+            case 4:
+                string(out, text(random), random, true);
+                break;
+            case 5:
+            case 6:
+                object(out, random, depth);
+                break;
+            default:
+                out.append('[');
+                int elements = random.nextInt(4);
+                for (int i = 0; i < elements; i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    value(out, random, depth - 1);
+                }
+                out.append(']');
+                break;
+        }
+    }
+
+    // Strings full of what the scanner must not take for structure: quotes, backslash runs
+    // across block boundaries, brackets and the array field name
+    private static String text(Random random) {
+        String[] pieces = {"a", "internalRegistrations", "\":[", "{", "}", "[", "]", "\"", "\\", "\\\\", "\\\"",
+                "\u00e9", "\u4e2d", "\ud83d\ude00", " ", ":", ","};
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+        }
+        if (random.nextInt(4) == 0) {
+            text.append("x".repeat(random.nextInt(130)));
+        }
+        return text.toString();
+    }
+
+    private static void string(StringBuilder out, String value, Random random, boolean escapeAscii) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (escapeAscii && random.nextInt(50) == 0) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static String whitespace(Random random) {
+        String[] blanks = {"", "", "", " ", "\n", "\t ", "\r\n  "};
+        return blanks[random.nextInt(blanks.length)];
+    }
+}
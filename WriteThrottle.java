@@ -0,0 +1,179 @@
+package com.socgen.riskweb.dao;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Caps what the WK_TSMAESTRO writers may put on the shared database, whatever the
+// AdaptiveBatchController would like: a token bucket of rows per second (burst up to
+// burstRows) and a number of batches in flight. A batch slower than latencyBackoffMs
+// halves the allowed rate; every batch under it gives back a tenth of the configured
+// rate. All limits can be changed over JMX while a load runs; 0 means unlimited.
+@Component
+@ManagedResource(objectName = "com.socgen.riskweb:type=Loader,name=WriteThrottle")
+public class WriteThrottle {
+
+    private static final Logger log = Logger.getLogger(WriteThrottle.class.getName());
+
+    private static final double MIN_BACKOFF_FACTOR = 0.1;
+
+    @Value("${maestro.loader.throttle.rowsPerSecond:0}")
+    private long rowsPerSecond;
+
+    @Value("${maestro.loader.throttle.burstRows:0}")
+    private long burstRows;
+
+    @Value("${maestro.loader.throttle.maxConcurrentBatches:0}")
+    private int maxConcurrentBatches;
+
+    @Value("${maestro.loader.throttle.latencyBackoffMs:0}")
+    private long latencyBackoffMs;
+
+    // NaN until the bucket is first used with a rate: it then starts full, so the first batch
+    // of a run only waits if it is larger than the burst
+    private double tokens = Double.NaN;
+    private long lastRefillNanos = System.nanoTime();
+    private double backoffFactor = 1.0;
+    private int activeBatches;
+    private long throttledNanos;
+    private long backoffs;
+
+    // Blocks until the batch may go: first a batch slot, then the rows' tokens. Each
+    // acquire must be paired with a release.
+    public void acquire(int rows) {
+        long waitNanos;
+        synchronized (this) {
+            while (maxConcurrentBatches > 0 && activeBatches >= maxConcurrentBatches) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a write slot", e);
+                }
+            }
+            activeBatches++;
+            waitNanos = reserve(rows);
+        }
+
+        // Tokens are taken up front, so later batches queue behind this one's deficit
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release(0);
+                throw new IllegalStateException("Interrupted while throttled", e);
+            }
+        }
+    }
+
+    public synchronized void release(long elapsedNanos) {
+        activeBatches--;
+        notifyAll();
+
+        if (latencyBackoffMs <= 0 || elapsedNanos <= 0) {
+            return;
+        }
+        long latencyMs = elapsedNanos / 1_000_000;
+        if (latencyMs > latencyBackoffMs) {
+            backoffFactor = Math.max(MIN_BACKOFF_FACTOR, backoffFactor / 2);
+            backoffs++;
+            log.info("Write throttle: batch took " + latencyMs + "ms, over " + latencyBackoffMs
+                    + "ms, rate down to " + Math.round(getEffectiveRowsPerSecond()) + " rows/s");
+        } else if (backoffFactor < 1.0) {
+            backoffFactor = Math.min(1.0, backoffFactor + 0.1);
+        }
+    }
+
+    private long reserve(int rows) {
+        long now = System.nanoTime();
+        double rate = getEffectiveRowsPerSecond();
+        if (rate <= 0) {
+            lastRefillNanos = now;
+            tokens = Double.NaN;
+            return 0;
+        }
+        double capacity = burstRows > 0 ? burstRows : rate;
+        tokens = Double.isNaN(tokens)
+                ? capacity
+                : Math.min(capacity, tokens + (now - lastRefillNanos) * rate / 1_000_000_000.0);
+        lastRefillNanos = now;
+        tokens -= rows;
+        if (tokens >= 0) {
+            return 0;
+        }
+        long waitNanos = (long) (-tokens / rate * 1_000_000_000.0);
+        throttledNanos += waitNanos;
+        return waitNanos;
+    }
+
+    @ManagedAttribute
+    public synchronized long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    @ManagedAttribute
+    public synchronized void setRowsPerSecond(long rowsPerSecond) {
+        this.rowsPerSecond = Math.max(0, rowsPerSecond);
+        log.info("Write throttle: rowsPerSecond set to " + this.rowsPerSecond);
+    }
+
+    @ManagedAttribute
+    public synchronized long getBurstRows() {
+        return burstRows;
+    }
+
+    @ManagedAttribute
+    public synchronized void setBurstRows(long burstRows) {
+        this.burstRows = Math.max(0, burstRows);
+    }
+
+    @ManagedAttribute
+    public synchronized int getMaxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
+    @ManagedAttribute
+    public synchronized void setMaxConcurrentBatches(int maxConcurrentBatches) {
+        this.maxConcurrentBatches = Math.max(0, maxConcurrentBatches);
+        log.info("Write throttle: maxConcurrentBatches set to " + this.maxConcurrentBatches);
+        notifyAll();
+    }
+
+    @ManagedAttribute
+    public synchronized long getLatencyBackoffMs() {
+        return latencyBackoffMs;
+    }
+
+    @ManagedAttribute
+    public synchronized void setLatencyBackoffMs(long latencyBackoffMs) {
+        this.latencyBackoffMs = Math.max(0, latencyBackoffMs);
+        if (this.latencyBackoffMs == 0) {
+            backoffFactor = 1.0;
+        }
+    }
+
+    @ManagedAttribute
+    public synchronized double getEffectiveRowsPerSecond() {
+        return rowsPerSecond * backoffFactor;
+    }
+
+    @ManagedAttribute
+    public synchronized int getActiveBatches() {
+        return activeBatches;
+    }
+
+    @ManagedAttribute
+    public synchronized long getThrottledMillis() {
+        return throttledNanos / 1_000_000;
+    }
+
+    @ManagedAttribute
+    public synchronized long getBackoffs() {
+        return backoffs;
+    }
+}
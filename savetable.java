@@ -4,40 +4,102 @@ import com.socgen.riskweb.Model.InternalRegistrations;
 import com.socgen.riskweb.Model.Registration;
 import com.socgen.riskweb.Model.ResponseInternal;
 import com.socgen.riskweb.Model.SubBookingEntity;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Logger;
 
 @Component
 public class DbeClientDaoImpl implements DbeClientDao {
 
-    private static final int BATCH_SIZE = 1000; // Reduced batch size for better performance
     private static final int THREAD_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
     private static final int LOG_INTERVAL = 50000;
     private static final Logger log = Logger.getLogger(DbeClientDaoImpl.class.getName());
 
-    @Autowired
+    // entityId, code, subbookingId; nulls first as the index orders them
+    public static final Comparator<Object[]> ROW_KEY_ORDER = Comparator
+            .comparing((Object[] row) -> (String) row[0], Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(row -> (String) row[1], Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(row -> (String) row[2], Comparator.nullsFirst(Comparator.naturalOrder()));
+
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private RegistrationLookupService registrationLookupService;
+
+    @Autowired
+    private SnapshotGeneration snapshotGeneration;
+
+    @Autowired
+    private LoadCheckpointStore loadCheckpointStore;
+
+    @Autowired
+    private AdaptiveBatchController batchController;
+
+    @Autowired
+    private Tracer tracer;
+
+    @Autowired
+    private WriteThrottle writeThrottle;
+
+    @Autowired
+    private LoadGate loadGate;
+
+    // Upper entityId (exclusive) of each WK_TSMAESTRO range partition, if the table is partitioned
+    @Value("${maestro.loader.partitionBounds:}")
+    private List<String> partitionBounds;
+
+    // Export sinks fed with each committed snapshot, e.g. Parquet files for analytics
+    @Autowired(required = false)
+    private List<PrimaryRoleRowSink> rowSinks = new ArrayList<>();
+
+    private TransactionTemplate transactionTemplate;
+
+    // The load's own pool when one is configured, otherwise the shared one
+    @Autowired
+    public void setLoaderDatabase(LoaderDatabase loaderDatabase) {
+        this.jdbcTemplate = loaderDatabase.getJdbcTemplate();
+        this.transactionTemplate = loaderDatabase.getTransactionTemplate();
+    }
+
     private AtomicInteger totalInserted = new AtomicInteger(0);
 
     // Enum for SQL queries (assumed to be defined elsewhere, included here for clarity)
     public enum AppQueries {
-        QRY_PRIMARYROLE_TRUNCATE("TRUNCATE TABLE WK_MAESTRO_PRIMROLE_DBE"),
-        QRY_SAVE_PRIMARYROLE("INSERT INTO WK_TSMAESTRO (entityId, code, subbookingId) VALUES (?, ?, ?)");
+        // WK_MAESTRO_PRIMROLE_DBE, which this query used to empty, is neither written nor read by the load
+        QRY_PRIMARYROLE_TRUNCATE("TRUNCATE TABLE WK_TSMAESTRO"),
+        QRY_SAVE_PRIMARYROLE("INSERT INTO WK_TSMAESTRO (entityId, code, subbookingId) VALUES (?, ?, ?)"),
+        QRY_READ_PRIMARYROLE_BY_ENTITY("SELECT entityId, code, subbookingId FROM WK_TSMAESTRO WHERE entityId = ?"),
+        QRY_READ_PRIMARYROLE_ALL("SELECT entityId, code, subbookingId FROM WK_TSMAESTRO ORDER BY entityId, code, subbookingId");
 
         private final String value;
 
@@ -50,103 +112,545 @@ public class DbeClientDaoImpl implements DbeClientDao {
         }
     }
 
-    @Transactional
+    // One load of one snapshot: what the batches share while they run
+    private static class LoadRun {
+        private final String snapshotDate;
+        private final int totalEntities;
+        private final PrimaryRoleReverseIndex.Builder reverseIndex = new PrimaryRoleReverseIndex.Builder();
+        private final WriterGate writerGate = new WriterGate();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicInteger batchIndex = new AtomicInteger();
+        private final BooleanSupplier leaseHeld;
+        // The distributed shard the run writes, whose lease every checkpoint is fenced with
+        private final ShardLeaseCoordinator.Shard lease;
+
+        LoadRun(String snapshotDate, int totalEntities, BooleanSupplier leaseHeld, ShardLeaseCoordinator.Shard lease) {
+            this.snapshotDate = snapshotDate;
+            this.totalEntities = totalEntities;
+            this.leaseHeld = leaseHeld;
+            this.lease = lease;
+        }
+    }
+
+    // Counts writers inside a batch; the allowed number can change between acquires
+    private static class WriterGate {
+        private int active;
+
+        synchronized void acquire(int allowed) {
+            while (active >= Math.max(1, allowed)) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a writer slot", e);
+                }
+            }
+            active++;
+        }
+
+        synchronized void release() {
+            active--;
+            notifyAll();
+        }
+    }
+
+    @Override
     public void savePrimaryroleApi(ResponseInternal internalRatingsEventResponse) {
-        List<InternalRegistrations> internalRegistrationsList = internalRatingsEventResponse.getInternalRegistrations();
+        savePrimaryroleApi(internalRatingsEventResponse, null);
+    }
+
+    // Each batch commits on its own together with its checkpoint. Rerunning the same
+    // snapshotDate after a failure skips the committed ranges; without a snapshotDate
+    // nothing is journaled and the table is always reloaded from scratch. A date whose
+    // load already completed is reloaded from scratch as well. A load of a date already
+    // loading waits for that run; loads of other dates wait for the table.
+    @Override
+    public void savePrimaryroleApi(ResponseInternal internalRatingsEventResponse, String snapshotDate) {
+        loadGate.load(snapshotDate, () -> loadGate.write(snapshotDate, () -> {
+            // Root span of the load unless the caller is already tracing the run
+            Span span = tracer.spanBuilder("maestro.primaryrole.save").startSpan();
+            if (snapshotDate != null) {
+                span.setAttribute("maestro.snapshotDate", snapshotDate);
+            }
+            try (Scope ignored = span.makeCurrent()) {
+                savePrimaryroleSnapshot(internalRatingsEventResponse, snapshotDate, span);
+                return "loaded";
+            } catch (RuntimeException e) {
+                span.recordException(e);
+                span.setStatus(StatusCode.ERROR, String.valueOf(e.getMessage()));
+                throw e;
+            } finally {
+                span.end();
+            }
+        }));
+    }
+
+    // A snapshot that is not to replace WK_TSMAESTRO, e.g. an older date of a backfill: it only
+    // goes to the export sinks. The lookup indexes and the change feed follow the table, and
+    // the table is not touched, so no permit is needed.
+    public void exportPrimaryroleApi(ResponseInternal internalRatingsEventResponse, String snapshotDate) {
+        exportRows(snapshotDate, sortedEntities(internalRatingsEventResponse));
+    }
+
+    private void savePrimaryroleSnapshot(ResponseInternal internalRatingsEventResponse, String snapshotDate, Span span) {
+        List<InternalRegistrations> internalRegistrationsList = sortedEntities(internalRatingsEventResponse);
+        span.setAttribute("maestro.entities", internalRegistrationsList.size());
 
         int totalSize = internalRegistrationsList.size();
         log.info("Total records to process: " + totalSize);
 
-        // Truncate the table before inserting new data
-        try {
-            this.jdbcTemplate.update(AppQueries.QRY_PRIMARYROLE_TRUNCATE.value(), new Object[]{});
-            log.info("Truncated table WK_MAESTRO_PRIMROLE_DBE");
-        } catch (Exception e) {
-            log.severe("Failed to truncate table WK_MAESTRO_PRIMROLE_DBE: " + e.getMessage());
-            throw e;
+        BitSet committed = snapshotDate == null
+                ? new BitSet(totalSize)
+                : loadCheckpointStore.committedOrdinals(snapshotDate, totalSize);
+
+        if (committed.isEmpty()) {
+            resetForLoad(snapshotDate);
+        } else {
+            log.info("Resuming load for snapshotDate " + snapshotDate + ": " + committed.cardinality()
+                    + " of " + totalSize + " entities already committed");
+        }
+
+        LoadRun run = new LoadRun(snapshotDate, totalSize, () -> true, null);
+        writeRange(internalRegistrationsList, 0, totalSize, committed, run);
+        if (snapshotDate != null) {
+            // A rerun of this date must not mistake the finished load for one to resume
+            loadCheckpointStore.markComplete(snapshotDate, totalSize);
+        }
+        span.setAttribute("maestro.rows", totalInserted.get());
+        span.setAttribute("maestro.batches", run.batchIndex.get());
+
+        // Only a complete load replaces the lookup snapshot; a failed batch has thrown by now
+        registrationLookupService.publish(internalRegistrationsList, run.reverseIndex.build());
+
+        // Every batch has committed by now; readers caching WK_TSMAESTRO rows drop them
+        snapshotGeneration.bumpAfterCommit();
+
+        exportRows(snapshotDate, internalRegistrationsList);
+    }
+
+    // Streams the snapshot to the export sinks entity by entity
+    private void exportRows(String snapshotDate, List<InternalRegistrations> sortedEntities) {
+        if (rowSinks.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        try (RowExports exports = new RowExports(rowSinks, snapshotDate)) {
+            for (InternalRegistrations internalReg : sortedEntities) {
+                rows.clear();
+                PrimaryRoleFlattener.flatten(internalReg, rows);
+                rows.sort(ROW_KEY_ORDER);
+                for (Object[] row : rows) {
+                    exports.row((String) row[0], (String) row[1], (String) row[2]);
+                }
+            }
+            exports.commit();
         }
+    }
 
-        if (totalSize > 0) {
-            long startTime = System.currentTimeMillis();
-            ExecutorService executorService = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-            List<CompletableFuture<Void>> futures = new ArrayList<>();
+    // One export per sink for one snapshot. A sink that fails is logged and dropped; the load
+    // and the other sinks carry on. Without a snapshotDate the export is filed under today.
+    private static class RowExports implements AutoCloseable {
+        private final List<PrimaryRoleRowSink.Export> exports = new ArrayList<>();
+        private final String snapshotDate;
 
-            for (int i = 0; i < totalSize; i += BATCH_SIZE) {
-                int end = Math.min(i + BATCH_SIZE, totalSize);
-                List<InternalRegistrations> batch = internalRegistrationsList.subList(i, end);
-                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> processBatch(batch), executorService);
-                futures.add(future);
+        RowExports(List<PrimaryRoleRowSink> sinks, String snapshotDate) {
+            this.snapshotDate = snapshotDate != null ? snapshotDate : LocalDate.now().toString();
+            for (PrimaryRoleRowSink sink : sinks) {
+                try {
+                    exports.add(sink.open(this.snapshotDate));
+                } catch (IOException | RuntimeException e) {
+                    log.warning("Could not open export " + sink.getClass().getSimpleName() + " for snapshotDate "
+                            + this.snapshotDate + ": " + e.getMessage());
+                }
             }
+        }
 
+        void row(String entityId, String code, String subbookingId) {
+            for (Iterator<PrimaryRoleRowSink.Export> it = exports.iterator(); it.hasNext(); ) {
+                PrimaryRoleRowSink.Export export = it.next();
+                try {
+                    export.row(entityId, code, subbookingId);
+                } catch (IOException | RuntimeException e) {
+                    it.remove();
+                    discard(export, e);
+                }
+            }
+        }
+
+        void commit() {
+            for (PrimaryRoleRowSink.Export export : exports) {
+                try {
+                    export.commit();
+                } catch (IOException | RuntimeException e) {
+                    discard(export, e);
+                }
+            }
+            exports.clear();
+        }
+
+        @Override
+        public void close() {
+            for (PrimaryRoleRowSink.Export export : exports) {
+                discard(export, null);
+            }
+            exports.clear();
+        }
+
+        private void discard(PrimaryRoleRowSink.Export export, Exception cause) {
+            if (cause != null) {
+                log.warning("Export for snapshotDate " + snapshotDate + " failed and was discarded: " + cause.getMessage());
+            }
+            try {
+                export.close();
+            } catch (IOException e) {
+                log.warning("Could not discard export for snapshotDate " + snapshotDate + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Ordinals must mean the same entity on every run and every node, whatever order the API returned
+    public static List<InternalRegistrations> sortedEntities(ResponseInternal internalRatingsEventResponse) {
+        List<InternalRegistrations> internalRegistrationsList = new ArrayList<>(internalRatingsEventResponse.getInternalRegistrations());
+        internalRegistrationsList.sort(Comparator.comparing(InternalRegistrations::getEntityId,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+        return internalRegistrationsList;
+    }
+
+    public void resetForLoad(String snapshotDate) {
+        loadGate.write(snapshotDate, () -> {
+            // Truncate the table before inserting new data
+            try {
+                this.jdbcTemplate.update(AppQueries.QRY_PRIMARYROLE_TRUNCATE.value(), new Object[]{});
+                log.info("Truncated table WK_TSMAESTRO");
+            } catch (RuntimeException e) {
+                log.severe("Failed to truncate table WK_TSMAESTRO: " + e.getMessage());
+                throw e;
+            }
+            loadCheckpointStore.reset(snapshotDate);
+        });
+    }
+
+    // Writes one shard [first, end) of the sorted snapshot for the distributed load. Checkpoints
+    // make a shard reclaimed from an expired lease resume where the previous owner stopped;
+    // a batch whose shard was reclaimed in the meantime rolls back instead of committing.
+    public void saveShard(List<InternalRegistrations> sortedEntities, ShardLeaseCoordinator.Shard shard,
+                          BooleanSupplier leaseHeld) {
+        String snapshotDate = shard.getSnapshotDate();
+        loadGate.write(snapshotDate, () -> {
+            BitSet committed = loadCheckpointStore.committedOrdinals(snapshotDate, sortedEntities.size());
+            LoadRun run = new LoadRun(snapshotDate, sortedEntities.size(), leaseHeld, shard);
+            writeRange(sortedEntities, shard.getFirstOrdinal(), shard.getEndOrdinal(), committed, run);
+        });
+    }
+
+    // Called on every node once all shards of the snapshot are done
+    public void publishLoaded(String snapshotDate, List<InternalRegistrations> sortedEntities) {
+        loadGate.write(snapshotDate, () -> {
+            loadCheckpointStore.markComplete(snapshotDate, sortedEntities.size());
+            PrimaryRoleReverseIndex.Builder reverseIndex = new PrimaryRoleReverseIndex.Builder();
+            flattenBatch(0, sortedEntities, reverseIndex);
+            registrationLookupService.publish(sortedEntities, reverseIndex.build());
+            snapshotGeneration.bumpAfterCommit();
+        });
+    }
+
+    // Rebuilds the in-memory indexes from the committed table, for loads that did not keep
+    // the snapshot on heap (the Spring Batch job). The same read feeds the export sinks.
+    // Returns the number of entities indexed.
+    public int publishFromTable(String snapshotDate) {
+        return loadGate.write(snapshotDate, () -> {
+            TableSnapshotCollector collector;
+            try (RowExports exports = new RowExports(rowSinks, snapshotDate)) {
+                collector = new TableSnapshotCollector(exports);
+                jdbcTemplate.query(AppQueries.QRY_READ_PRIMARYROLE_ALL.value(), collector);
+                collector.finish();
+                exports.commit();
+            }
+            registrationLookupService.publish(collector.lookupIndex.build(), collector.reverseIndex.build());
+            snapshotGeneration.bumpAfterCommit();
+            log.info("Published lookup indexes for " + collector.entityCount + " entities read back from WK_TSMAESTRO");
+            return collector.entityCount;
+        });
+    }
+
+    // Regroups the ordered rows into entities; a null subbookingId row stays its own registration
+    private static class TableSnapshotCollector implements RowCallbackHandler {
+        private final RegistrationLookupIndex.Builder lookupIndex = new RegistrationLookupIndex.Builder();
+        private final PrimaryRoleReverseIndex.Builder reverseIndex = new PrimaryRoleReverseIndex.Builder();
+        private final RowExports exports;
+        private InternalRegistrations current;
+        private int entityCount;
+
+        TableSnapshotCollector(RowExports exports) {
+            this.exports = exports;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            String entityId = rs.getString(1);
+            String code = rs.getString(2);
+            String subbookingId = rs.getString(3);
+            exports.row(entityId, code, subbookingId);
+
+            if (current == null || !Objects.equals(current.getEntityId(), entityId)) {
+                finish();
+                current = new InternalRegistrations();
+                current.setEntityId(entityId);
+                current.setRegistrations(new ArrayList<>());
+                reverseIndex.recordEntity(entityCount++, entityId);
+            }
+            reverseIndex.add(entityCount - 1, new Object[]{entityId, code, subbookingId});
+
+            List<Registration> registrations = current.getRegistrations();
+            Registration last = registrations.isEmpty() ? null : registrations.get(registrations.size() - 1);
+            if (subbookingId != null && last != null && Objects.equals(last.getCode(), code)
+                    && !last.getSubBookingEntities().isEmpty()) {
+                last.getSubBookingEntities().add(subBooking(subbookingId));
+                return;
+            }
+            Registration registration = new Registration();
+            registration.setCode(code);
+            registration.setSubBookingEntities(new ArrayList<>());
+            if (subbookingId != null) {
+                registration.getSubBookingEntities().add(subBooking(subbookingId));
+            }
+            registrations.add(registration);
+        }
+
+        void finish() {
+            if (current != null) {
+                lookupIndex.add(current);
+                current = null;
+            }
+        }
+
+        private static SubBookingEntity subBooking(String subbookingId) {
+            SubBookingEntity subBooking = new SubBookingEntity();
+            subBooking.setSubbookingId(subbookingId);
+            return subBooking;
+        }
+    }
+
+    private void writeRange(List<InternalRegistrations> entities, int first, int end, BitSet committed, LoadRun run) {
+        totalInserted.set(0);
+        if (end <= first) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        batchController.reset();
+
+        // Each writer owns one contiguous entityId range and walks it in key order
+        List<int[]> slices = writerSlices(entities, first, end);
+        // Batch spans on the writer threads stay children of the load span
+        ExecutorService executorService = Context.taskWrapping(Executors.newFixedThreadPool(slices.size()));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int[] slice : slices) {
+            futures.add(CompletableFuture.runAsync(
+                    () -> writeSlice(slice[0], slice[1], entities, committed, run), executorService));
+        }
+
+        try {
             CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // The other writers stop at their next batch boundary
+            run.failure.compareAndSet(null, e.getCause());
+        } finally {
             executorService.shutdown();
+        }
 
-            logProgress(totalInserted.get(), startTime);
-            log.info("Completed processing. Total inserted: " + totalInserted.get());
+        Throwable failure = run.failure.get();
+        if (failure != null) {
+            log.severe("Load failed, committed batches are kept. Rerun snapshotDate " + run.snapshotDate
+                    + " to resume: " + failure.getMessage());
+            throw new CompletionException(failure);
         }
+
+        logProgress(totalInserted.get(), startTime);
+        log.info("Completed processing. Total inserted: " + totalInserted.get());
     }
 
-    private void processBatch(List<InternalRegistrations> batch) {
-        int inserted = executeBatch(batch);
+    // Splits the sorted snapshot into one ordinal range per writer. With partition bounds
+    // configured (upper entityIds of the WK_TSMAESTRO partitions) the ranges follow them,
+    // otherwise the entities are divided evenly.
+    private List<int[]> writerSlices(List<InternalRegistrations> entities, int first, int last) {
+        List<int[]> slices = new ArrayList<>();
+
+        if (!partitionBounds.isEmpty()) {
+            int start = first;
+            for (String bound : partitionBounds) {
+                int end = start;
+                while (end < last && compareEntityId(entities.get(end).getEntityId(), bound) < 0) {
+                    end++;
+                }
+                if (end > start) {
+                    slices.add(new int[]{start, end});
+                }
+                start = end;
+            }
+            if (start < last) {
+                slices.add(new int[]{start, last});
+            }
+            return slices;
+        }
+
+        int size = last - first;
+        int writers = Math.max(1, Math.min(batchController.getMaxConcurrency(), size));
+        for (int w = 0; w < writers; w++) {
+            int start = first + (int) ((long) size * w / writers);
+            int end = first + (int) ((long) size * (w + 1) / writers);
+            if (end > start) {
+                slices.add(new int[]{start, end});
+            }
+        }
+        return slices;
+    }
+
+    private static int compareEntityId(String entityId, String bound) {
+        return entityId == null ? 1 : entityId.compareTo(bound);
+    }
+
+    private void writeSlice(int start, int end, List<InternalRegistrations> entities, BitSet committed, LoadRun run) {
+        int i = start;
+        while (i < end && run.failure.get() == null) {
+            if (committed.get(i)) {
+                // Already in the table; only the in-memory indexes need these entities
+                int skipEnd = Math.min(committed.nextClearBit(i), end);
+                flattenBatch(i, entities.subList(i, skipEnd), run.reverseIndex);
+                i = skipEnd;
+                continue;
+            }
+
+            int nextCommitted = committed.nextSetBit(i);
+            int limit = nextCommitted < 0 ? end : Math.min(end, nextCommitted);
+            int batchEnd = batchEnd(entities, i, limit, batchController.getTargetBatchRows());
+
+            // Writers beyond the controller's current concurrency wait their turn
+            run.writerGate.acquire(batchController.getTargetConcurrency());
+            try {
+                if (!run.leaseHeld.getAsBoolean()) {
+                    throw new IllegalStateException("Shard lease lost, stopping before entity " + i);
+                }
+                processBatch(i, entities.subList(i, batchEnd), run);
+            } catch (RuntimeException e) {
+                run.failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                run.writerGate.release();
+            }
+            i = batchEnd;
+        }
+    }
+
+    // Smallest entity range from start whose rows reach the controller's target, never past limit
+    private static int batchEnd(List<InternalRegistrations> entities, int start, int limit, int targetRows) {
+        int rows = 0;
+        int end = start;
+        while (end < limit && (rows < targetRows || end == start)) {
+            rows += Math.max(1, PrimaryRoleFlattener.rowCount(entities.get(end)));
+            end++;
+        }
+        return end;
+    }
+
+    private void processBatch(int firstOrdinal, List<InternalRegistrations> batch, LoadRun run) {
+        int inserted = executeBatch(firstOrdinal, batch, run);
         int newTotal = totalInserted.addAndGet(inserted);
         if (newTotal % LOG_INTERVAL == 0) {
             logProgress(newTotal, System.currentTimeMillis());
         }
     }
 
-    private int executeBatch(List<InternalRegistrations> batch) {
-        log.info("Started inserting records in WK_TSMAESTRO");
-
-        // Collect all records to insert
+    // Collects the batch's rows and merges its reverse index postings into the load-wide index
+    private List<Object[]> flattenBatch(int firstOrdinal, List<InternalRegistrations> batch,
+                                        PrimaryRoleReverseIndex.Builder reverseIndex) {
         List<Object[]> batchParams = new ArrayList<>();
+        PrimaryRoleReverseIndex.Builder batchIndex = new PrimaryRoleReverseIndex.Builder(firstOrdinal);
 
-        for (InternalRegistrations internalReg : batch) {
-            String entityId = internalReg.getEntityId();
-            List<Registration> registrations = internalReg.getRegistrations();
-
-            if (registrations != null) {
-                for (Registration reg : registrations) {
-                    String code = reg.getCode();
-                    List<SubBookingEntity> subBookingEntities = reg.getSubBookingEntities();
-
-                    // If subBookingEntities is null or empty, insert a record with null subbookingId
-                    if (subBookingEntities == null || subBookingEntities.isEmpty()) {
-                        batchParams.add(new Object[]{entityId, code, null});
-                    } else {
-                        // Insert a record for each subbookingId
-                        for (SubBookingEntity subBooking : subBookingEntities) {
-                            String subbookingId = subBooking.getSubbookingId();
-                            batchParams.add(new Object[]{entityId, code, subbookingId});
-                        }
-                    }
-                }
+        for (int i = 0; i < batch.size(); i++) {
+            InternalRegistrations internalReg = batch.get(i);
+            int ordinal = firstOrdinal + i;
+            int from = batchParams.size();
+            PrimaryRoleFlattener.flatten(internalReg, batchParams);
+
+            batchIndex.recordEntity(ordinal, internalReg.getEntityId());
+            for (int row = from; row < batchParams.size(); row++) {
+                batchIndex.add(ordinal, batchParams.get(row));
             }
         }
+        reverseIndex.merge(batchIndex);
+        return batchParams;
+    }
+
+    private int executeBatch(int firstOrdinal, List<InternalRegistrations> batch, LoadRun run) {
+        log.info("Started inserting records in WK_TSMAESTRO");
+
+        // Collect all records to insert, in index key order so inserts land sequentially
+        List<Object[]> batchParams = flattenBatch(firstOrdinal, batch, run.reverseIndex);
+        batchParams.sort(ROW_KEY_ORDER);
+
+        // The span starts once the throttle let the batch through, so an interrupted wait
+        // leaves no span open; the wait is recorded on it
+        long throttleStart = System.nanoTime();
+        writeThrottle.acquire(batchParams.size());
+        long batchStart = System.nanoTime();
+        Span span = tracer.spanBuilder("maestro.executeBatch")
+                .setAttribute("maestro.batch.index", run.batchIndex.getAndIncrement())
+                .setAttribute("maestro.batch.firstOrdinal", firstOrdinal)
+                .setAttribute("maestro.entities", batch.size())
+                .setAttribute("maestro.rows", batchParams.size())
+                .setAttribute("maestro.throttle.waitMs", (batchStart - throttleStart) / 1_000_000)
+                .startSpan();
 
-        // Execute batch update
-        int[] updateCounts = jdbcTemplate.batchUpdate(
-                AppQueries.QRY_SAVE_PRIMARYROLE.value(),
-                new BatchPreparedStatementSetter() {
-                    @Override
-                    public void setValues(PreparedStatement ps, int i) throws SQLException {
-                        Object[] params = batchParams.get(i);
-                        ps.setString(1, (String) params[0]); // entityId
-                        ps.setString(2, (String) params[1]); // code
-                        if (params[2] == null) {
-                            ps.setNull(3, java.sql.Types.VARCHAR); // subbookingId
-                        } else {
-                            ps.setString(3, (String) params[2]); // subbookingId
+        // The rows and their checkpoint commit together, or not at all
+        Integer inserted;
+        try (Scope ignored = span.makeCurrent()) {
+            inserted = executeBatchTransaction(firstOrdinal, batch, batchParams, run);
+        } catch (RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, String.valueOf(e.getMessage()));
+            throw e;
+        } finally {
+            writeThrottle.release(System.nanoTime() - batchStart);
+            span.end();
+        }
+
+        // Rows sent rather than update counts, which drivers may report as SUCCESS_NO_INFO
+        batchController.record(batchParams.size(), System.nanoTime() - batchStart);
+        return inserted == null ? 0 : inserted;
+    }
+
+    private Integer executeBatchTransaction(int firstOrdinal, List<InternalRegistrations> batch,
+                                            List<Object[]> batchParams, LoadRun run) {
+        return transactionTemplate.execute(status -> {
+            int[] updateCounts = jdbcTemplate.batchUpdate(
+                    AppQueries.QRY_SAVE_PRIMARYROLE.value(),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            Object[] params = batchParams.get(i);
+                            ps.setString(1, (String) params[0]); // entityId
+                            ps.setString(2, (String) params[1]); // code
+                            if (params[2] == null) {
+                                ps.setNull(3, java.sql.Types.VARCHAR); // subbookingId
+                            } else {
+                                ps.setString(3, (String) params[2]); // subbookingId
+                            }
                         }
-                    }
 
-                    @Override
-                    public int getBatchSize() {
-                        return batchParams.size();
+                        @Override
+                        public int getBatchSize() {
+                            return batchParams.size();
+                        }
                     }
-                }
-        );
+            );
 
-        return Arrays.stream(updateCounts).sum();
+            if (run.snapshotDate != null) {
+                loadCheckpointStore.record(run.snapshotDate, firstOrdinal, firstOrdinal + batch.size(),
+                        run.totalEntities, batchParams.size(), run.lease);
+            }
+            return Arrays.stream(updateCounts).sum();
+        });
     }
 
     private void logProgress(int totalInserted, long startTime) {
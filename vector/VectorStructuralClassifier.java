@@ -0,0 +1,37 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API version of StructuralScanner.ScalarClassifier: compares a whole register of
+// bytes per instruction. Only loaded by StructuralScanner.bestClassifier() when the
+// jdk.incubator.vector module is present.
+// Kept out of the main sources so they compile without the incubator module and its warning.
+// This directory is compiled on its own, against the main classes:
+//   javac --add-modules jdk.incubator.vector -cp <main classes> -d <vector classes> vector/*.java
+// and its classes are added to the classpath of a JVM started with --add-modules jdk.incubator.vector.
+public final class VectorStructuralClassifier implements StructuralScanner.Classifier {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int BLOCK = 64;
+
+    @Override
+    public void classify(byte[] data, int offset, long[] masks) {
+        long quotes = 0;
+        long backslashes = 0;
+        long brackets = 0;
+        // Species are at most 64 lanes, so each step fits in the block's 64-bit masks
+        for (int i = 0; i < BLOCK; i += SPECIES.length()) {
+            ByteVector bytes = ByteVector.fromArray(SPECIES, data, offset + i);
+            // '[' | 0x20 == '{' and ']' | 0x20 == '}'
+            ByteVector folded = bytes.or((byte) 0x20);
+            VectorMask<Byte> bracket = folded.eq((byte) '{').or(folded.eq((byte) '}'));
+
+            quotes |= bytes.eq((byte) '"').toLong() << i;
+            backslashes |= bytes.eq((byte) '\\').toLong() << i;
+            brackets |= bracket.toLong() << i;
+        }
+        masks[QUOTES] = quotes;
+        masks[BACKSLASHES] = backslashes;
+        masks[BRACKETS] = brackets;
+    }
+}